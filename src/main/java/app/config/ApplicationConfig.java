@@ -1,17 +1,31 @@
 package app.config;
 
 import app.controllers.CandidateController;
+import app.controllers.MetricsController;
 import app.controllers.ReportController;
 import app.controllers.SecurityController;
+import app.controllers.StatsController;
 import app.dao.CandidateDAO;
+import app.dao.ICandidateDao;
 import app.dao.SkillDAO;
 import app.dao.UserDAO;
 import app.exceptions.ApiException;
 import app.exceptions.ExceptionHandler;
+import app.metrics.MetricsRegistry;
+import app.metrics.TimedProxy;
 import app.routes.Routes;
 import app.security.JwtUtil;
+import app.security.PasswordHasher;
+import app.services.CandidateRanker;
+import app.services.CandidateVersionTracker;
+import app.services.CircuitBreaker;
+import app.services.PopularityLeaderboard;
+import app.services.SkillMatchIndex;
 import app.services.SkillStatsApiClient;
+import app.services.SkillStatsRefresher;
+import app.services.SkillStatsSnapshot;
 import app.utils.Populator;
+import app.utils.Utils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -19,6 +33,11 @@ import io.javalin.Javalin;
 import io.javalin.json.JavalinJackson;
 import jakarta.persistence.EntityManagerFactory;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
 public class ApplicationConfig {
 
     private static final int DEFAULT_PORT = 7070;
@@ -37,27 +56,78 @@ public class ApplicationConfig {
         SkillDAO skillDAO = new SkillDAO(emf);
         UserDAO userDAO = new UserDAO(emf);
 
-        // external api client and jwt util
-        SkillStatsApiClient skillStatsApiClient = new SkillStatsApiClient();
+        // external api client, only used by the background refresher, and jwt util
+        SkillStatsApiClient skillStatsApiClient = new SkillStatsApiClient(
+                Utils.getEnv("SKILL_STATS_API_URL", SkillStatsApiClient.DEFAULT_BASE_URL),
+                Duration.ofMillis(Utils.getEnvInt("SKILL_STATS_CONNECT_TIMEOUT_MS", 2000)),
+                Duration.ofMillis(Utils.getEnvInt("SKILL_STATS_REQUEST_TIMEOUT_MS", 5000)),
+                new CircuitBreaker("skill-stats",
+                        Utils.getEnvInt("SKILL_STATS_BREAKER_FAILURES", 5),
+                        Utils.getEnvInt("SKILL_STATS_BREAKER_OPEN_SECONDS", 30) * 1000L));
+
+        // warm start: the skills get their stats from the last snapshot before the leaderboard is built from them,
+        // and the snapshot is saved from the skill table again every few minutes
+        SkillStatsSnapshot skillStatsSnapshot = new SkillStatsSnapshot(
+                Path.of(Utils.getEnv("SKILL_STATS_SNAPSHOT_FILE", "skill-stats.snapshot")), skillDAO);
+        System.out.println("Skill stats loaded from snapshot: " + skillStatsSnapshot.load());
+        skillStatsSnapshot.start(Utils.getEnvInt("SKILL_STATS_SNAPSHOT_MINUTES", 5));
+
         JwtUtil jwtUtil = new JwtUtil(SECRET_KEY);
 
+        // bcrypt gets its own bounded pool so logins can't starve the other endpoints
+        PasswordHasher passwordHasher = new PasswordHasher(
+                Utils.getEnvInt("BCRYPT_COST", 10),
+                Utils.getEnvInt("BCRYPT_THREADS", Runtime.getRuntime().availableProcessors()),
+                Utils.getEnvInt("BCRYPT_QUEUE_SIZE", 100));
+
+        // in-memory leaderboard for the popularity report and skill index for matching,
+        // both built once from the database and then kept up to date by the dao
+        Map<Integer, Set<String>> skillSlugs = candidateDAO.getSkillSlugsByCandidate();
+        PopularityLeaderboard leaderboard = new PopularityLeaderboard();
+        leaderboard.rebuild(skillSlugs, skillDAO.getPopularityBySlug());
+        candidateDAO.addListener(leaderboard);
+        SkillMatchIndex skillMatchIndex = new SkillMatchIndex();
+        skillMatchIndex.rebuild(skillSlugs, skillDAO.getCategoriesBySlug());
+        candidateDAO.addListener(skillMatchIndex);
+
+        // etags for conditional gets on candidates
+        CandidateVersionTracker versionTracker = new CandidateVersionTracker();
+        candidateDAO.addListener(versionTracker);
+
+        // skill stats are pulled from the api in the background and stored on the skills,
+        // so no request has to wait on the api
+        SkillStatsRefresher skillStatsRefresher = new SkillStatsRefresher(skillDAO, skillStatsApiClient, leaderboard, versionTracker);
+        skillStatsRefresher.start(Utils.getEnvInt("SKILL_STATS_REFRESH_MINUTES", 30));
+
+        // metrics for /metrics, the candidate dao is wrapped so every call is timed
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        ICandidateDao timedCandidateDAO = TimedProxy.wrap(ICandidateDao.class, candidateDAO, metricsRegistry, "candidate");
+
         // setting up controllers that handle the requests
-        CandidateController candidateController = new CandidateController(candidateDAO, skillStatsApiClient);
-        ReportController reportController = new ReportController(candidateDAO, skillStatsApiClient);
-        SecurityController securityController = new SecurityController(userDAO, jwtUtil);
+        CandidateController candidateController = new CandidateController(timedCandidateDAO, skillDAO, skillMatchIndex, versionTracker);
+        ReportController reportController = new ReportController(leaderboard, new CandidateRanker(skillMatchIndex, skillDAO));
+        SecurityController securityController = new SecurityController(userDAO, jwtUtil, passwordHasher);
+        StatsController statsController = new StatsController(emf, skillStatsApiClient, skillStatsRefresher);
+        MetricsController metricsController = new MetricsController(metricsRegistry, skillStatsApiClient, skillStatsRefresher);
 
         // setting up json serialization to handle dates correctly
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
 
+        // opt-in: run every request on its own virtual thread instead of the fixed platform thread pool,
+        // so blocking jdbc and http calls don't exhaust the pool under load
+        boolean useVirtualThreads = Boolean.parseBoolean(Utils.getEnv("VIRTUAL_THREADS", "false"));
+
         Javalin app = Javalin.create(config -> {
+            config.useVirtualThreads = useVirtualThreads;
             config.http.defaultContentType = "application/json";
             config.jsonMapper(new JavalinJackson(objectMapper, true));
+            config.requestLogger.http(metricsController::requestDone);
             config.bundledPlugins.enableRouteOverview("/routes", Routes.Role.ANYONE);
         }).start(port);
 
-        Routes.configureRoutes(app, candidateController, reportController, securityController, jwtUtil);
+        Routes.configureRoutes(app, candidateController, reportController, securityController, statsController, metricsController, jwtUtil);
 
         app.get("/", ctx -> {
             ctx.redirect("/routes");
@@ -69,6 +139,7 @@ public class ApplicationConfig {
 
         System.out.println("Route Overview: http://localhost:" + port + "/routes");
         System.out.println("API endpoints: http://localhost:" + port + "/api");
+        System.out.println("Virtual threads: " + (useVirtualThreads ? "enabled" : "disabled"));
 
         return app;
     }
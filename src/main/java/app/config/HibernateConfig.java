@@ -2,15 +2,27 @@ package app.config;
 
 import app.utils.Utils;
 
+import com.zaxxer.hikari.HikariDataSource;
 import jakarta.persistence.EntityManagerFactory;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.service.ServiceRegistry;
 
 import java.util.Properties;
 
 public class HibernateConfig {
+    // connection pool defaults, can be overridden per environment
+    private static final int DEFAULT_POOL_MIN_IDLE = 2;
+    private static final int DEFAULT_POOL_MAX_SIZE = 10;
+    private static final long DEFAULT_POOL_CONNECTION_TIMEOUT_MS = 30_000;
+    private static final long DEFAULT_POOL_IDLE_TIMEOUT_MS = 600_000;
+    private static final long DEFAULT_POOL_LEAK_DETECTION_MS = 30_000;
+    // matches the allocation size of the candidate id sequence
+    private static final int JDBC_BATCH_SIZE = 50;
+
     private static EntityManagerFactory emf;
     private static EntityManagerFactory emfTest;
     private static Boolean isTest = false;
@@ -81,6 +93,43 @@ public class HibernateConfig {
         props.put("hibernate.show_sql", "false");
         props.put("hibernate.format_sql", "false");
         props.put("hibernate.use_sql_comments", "false");
+        props.put("hibernate.session_factory.statement_inspector", "app.dao.StatementCounter");
+        setCacheProperties(props);
+        setBatchProperties(props);
+        // using hikari instead of hibernates built-in connection pool, which is not meant for production
+        props.put("hibernate.connection.provider_class", "org.hibernate.hikaricp.internal.HikariCPConnectionProvider");
+        props.put("hibernate.hikari.poolName", "candidate-matcher-pool");
+        setPoolProperties(props, DEFAULT_POOL_MIN_IDLE, DEFAULT_POOL_MAX_SIZE, DEFAULT_POOL_CONNECTION_TIMEOUT_MS,
+                DEFAULT_POOL_IDLE_TIMEOUT_MS, DEFAULT_POOL_LEAK_DETECTION_MS);
+        return props;
+    }
+
+    // second level cache through jcache, with ehcache as the provider. regions are created on first use
+    private static Properties setCacheProperties(Properties props) {
+        props.put("hibernate.cache.use_second_level_cache", "true");
+        props.put("hibernate.cache.region.factory_class", "jcache");
+        props.put("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+        props.put("hibernate.javax.cache.missing_cache_strategy", "create");
+        props.put("hibernate.generate_statistics", "true");
+        return props;
+    }
+
+    // groups inserts and updates into jdbc batches, ordering them by entity so each batch holds a single statement
+    private static Properties setBatchProperties(Properties props) {
+        props.put("hibernate.jdbc.batch_size", String.valueOf(JDBC_BATCH_SIZE));
+        props.put("hibernate.order_inserts", "true");
+        props.put("hibernate.order_updates", "true");
+        return props;
+    }
+
+    // hikari reads its settings as strings, so everything is converted here
+    private static Properties setPoolProperties(Properties props, int minIdle, int maxSize, long connectionTimeoutMs,
+                                                long idleTimeoutMs, long leakDetectionMs) {
+        props.put("hibernate.hikari.minimumIdle", String.valueOf(minIdle));
+        props.put("hibernate.hikari.maximumPoolSize", String.valueOf(maxSize));
+        props.put("hibernate.hikari.connectionTimeout", String.valueOf(connectionTimeoutMs));
+        props.put("hibernate.hikari.idleTimeout", String.valueOf(idleTimeoutMs));
+        props.put("hibernate.hikari.leakDetectionThreshold", String.valueOf(leakDetectionMs));
         return props;
     }
 
@@ -89,6 +138,12 @@ public class HibernateConfig {
         props.setProperty("hibernate.connection.url", System.getenv("CONNECTION_STR") + DBName);
         props.setProperty("hibernate.connection.username", System.getenv("DB_USERNAME"));
         props.setProperty("hibernate.connection.password", System.getenv("DB_PASSWORD"));
+        setPoolProperties(props,
+                Utils.getEnvInt("DB_POOL_MIN_IDLE", DEFAULT_POOL_MIN_IDLE),
+                Utils.getEnvInt("DB_POOL_MAX_SIZE", DEFAULT_POOL_MAX_SIZE),
+                Utils.getEnvInt("DB_POOL_CONNECTION_TIMEOUT_MS", (int) DEFAULT_POOL_CONNECTION_TIMEOUT_MS),
+                Utils.getEnvInt("DB_POOL_IDLE_TIMEOUT_MS", (int) DEFAULT_POOL_IDLE_TIMEOUT_MS),
+                Utils.getEnvInt("DB_POOL_LEAK_DETECTION_MS", (int) DEFAULT_POOL_LEAK_DETECTION_MS));
         return props;
     }
 
@@ -99,6 +154,13 @@ public class HibernateConfig {
         props.put("hibernate.connection.url", "jdbc:postgresql://localhost:5432/" + DBName);
         props.put("hibernate.connection.username", DB_USERNAME);
         props.put("hibernate.connection.password", DB_PASSWORD);
+        // pool settings are optional in config.properties
+        setPoolProperties(props,
+                Integer.parseInt(Utils.getPropertyValue("DB_POOL_MIN_IDLE", "config.properties", String.valueOf(DEFAULT_POOL_MIN_IDLE))),
+                Integer.parseInt(Utils.getPropertyValue("DB_POOL_MAX_SIZE", "config.properties", String.valueOf(DEFAULT_POOL_MAX_SIZE))),
+                Long.parseLong(Utils.getPropertyValue("DB_POOL_CONNECTION_TIMEOUT_MS", "config.properties", String.valueOf(DEFAULT_POOL_CONNECTION_TIMEOUT_MS))),
+                Long.parseLong(Utils.getPropertyValue("DB_POOL_IDLE_TIMEOUT_MS", "config.properties", String.valueOf(DEFAULT_POOL_IDLE_TIMEOUT_MS))),
+                Long.parseLong(Utils.getPropertyValue("DB_POOL_LEAK_DETECTION_MS", "config.properties", String.valueOf(DEFAULT_POOL_LEAK_DETECTION_MS))));
         return props;
     }
 
@@ -110,6 +172,19 @@ public class HibernateConfig {
         props.put("hibernate.archive.autodetection", "class");
         props.put("hibernate.show_sql", "true");
         props.put("hibernate.hbm2ddl.auto", "create-drop"); // update for production
+        // a small pool is plenty for tests, and leak detection helps catching entity managers that aren't closed
+        setPoolProperties(props, 1, 5, 10_000, DEFAULT_POOL_IDLE_TIMEOUT_MS, 5_000);
         return props;
     }
+
+    // returns the hikari pool behind the given emf, or null if it isn't using hikari
+    public static HikariDataSource getPool(EntityManagerFactory emf) {
+        ConnectionProvider provider = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(ConnectionProvider.class);
+        if (provider != null && provider.isUnwrappableAs(HikariDataSource.class)) {
+            return provider.unwrap(HikariDataSource.class);
+        }
+        return null;
+    }
 }
\ No newline at end of file
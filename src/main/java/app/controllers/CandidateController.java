@@ -1,58 +1,258 @@
 package app.controllers;
 
-import app.dao.CandidateDAO;
+import app.dao.ICandidateDao;
+import app.dao.SkillDAO;
+import app.dto.BulkItemResultDTO;
+import app.dto.BulkResultDTO;
 import app.dto.CandidateDTO;
+import app.dto.CandidateImportDTO;
+import app.dto.ImportResultDTO;
+import app.dto.SkillAssignmentDTO;
 import app.entities.Candidate;
+import app.entities.Skill;
 import app.entities.SkillCategory;
 import app.exceptions.ApiException;
-import app.services.SkillStatsApiClient;
+import app.services.CandidateVersionTracker;
+import app.services.SkillMatchIndex;
 import io.javalin.http.Context;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.RollbackException;
+import org.hibernate.exception.ConstraintViolationException;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class CandidateController {
-    private final CandidateDAO candidateDAO;
-    private final SkillStatsApiClient skillStatsApiClient;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // how many candidates are loaded at a time when streaming the full list
+    private static final int STREAM_PAGE_SIZE = 500;
+    private static final int MAX_BULK_SIZE = 10_000;
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+    // a bulk request is saved in transactions of this many candidates, so a database error only fails that chunk
+    private static final int BULK_CHUNK_SIZE = 1000;
+    private static final String CHANGED_CONCURRENTLY = "Candidate was changed by someone else, please try again";
 
-    public CandidateController(CandidateDAO candidateDAO, SkillStatsApiClient skillStatsApiClient) {
+    private final ICandidateDao candidateDAO;
+    private final SkillDAO skillDAO;
+    private final SkillMatchIndex skillMatchIndex;
+    private final CandidateVersionTracker versionTracker;
+
+    public CandidateController(ICandidateDao candidateDAO, SkillDAO skillDAO, SkillMatchIndex skillMatchIndex,
+                               CandidateVersionTracker versionTracker) {
         this.candidateDAO = candidateDAO;
-        this.skillStatsApiClient = skillStatsApiClient;
+        this.skillDAO = skillDAO;
+        this.skillMatchIndex = skillMatchIndex;
+        this.versionTracker = versionTracker;
     }
 
     public void getAllCandidates(Context ctx) {
+        // the parameters are checked first, so a bad request gets its 400 even when the etag matches
         String categoryParam = ctx.queryParam("category");
-        List<Candidate> candidates;
+        boolean filtered = categoryParam != null && !categoryParam.isEmpty();
+        EnumSet<SkillCategory> categories = filtered ? parseCategories(categoryParam) : null;
+        boolean matchAll = filtered && parseMatchAll(ctx);
+
+        boolean paged = ctx.queryParam("limit") != null || ctx.queryParam("after") != null;
+        int limit = parseIntParam(ctx, "limit", DEFAULT_PAGE_SIZE);
+        int after = parseIntParam(ctx, "after", 0);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ApiException(400, "Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        // the etag covers every candidate, so any query on the list can be answered with 304 while nothing changed
+        if (notModified(ctx, versionTracker.getCollectionETag(), versionTracker.getCollectionLastModified())) {
+            return;
+        }
+
+        if (filtered) {
+            getCandidatesByCategories(ctx, skillMatchIndex.matchCategories(categories, matchAll), paged, limit, after);
+        } else if (paged) {
+            getCandidatePage(ctx, limit, after);
+        } else {
+            // without paging parameters the whole table is streamed, writing the json array page by page.
+            // javalin doesn't close the stream, and the dao timing only ends when it is used up or closed
+            try (Stream<CandidateDTO> candidates = candidateDAO.streamAllAsDTOs(STREAM_PAGE_SIZE)) {
+                ctx.writeJsonStream(candidates);
+            }
+        }
+    }
 
-        if (categoryParam != null && !categoryParam.isEmpty()) {
+    // category=DB,DEVOPS, any letter case
+    private static EnumSet<SkillCategory> parseCategories(String categoryParam) {
+        EnumSet<SkillCategory> categories = EnumSet.noneOf(SkillCategory.class);
+        for (String name : categoryParam.split(",")) {
+            if (name.isBlank()) {
+                continue;
+            }
             try {
-                SkillCategory category = SkillCategory.valueOf(categoryParam.toUpperCase());
-                candidates = candidateDAO.getByCategory(category);
+                categories.add(SkillCategory.valueOf(name.trim().toUpperCase(Locale.ROOT)));
             } catch (IllegalArgumentException e) {
                 throw new ApiException(400, "Invalid skill category");
             }
+        }
+        if (categories.isEmpty()) {
+            throw new ApiException(400, "Invalid skill category");
+        }
+        return categories;
+    }
+
+    // mode=all means a skill in every category, mode=any (the default) a skill in at least one
+    private static boolean parseMatchAll(Context ctx) {
+        String mode = ctx.queryParam("mode");
+        if (mode != null && !mode.equalsIgnoreCase("all") && !mode.equalsIgnoreCase("any")) {
+            throw new ApiException(400, "Mode must be all or any");
+        }
+        return "all".equalsIgnoreCase(mode);
+    }
+
+    // the matching ids come from the per-category sets in the skill index, so only the candidates that are
+    // returned are read from the database. supports the same limit/after paging as the unfiltered list
+    private void getCandidatesByCategories(Context ctx, RoaringBitmap matches, boolean paged, int limit, int after) {
+        if (paged) {
+            // ids are ascending, so the page starts right after the cursor
+            List<Integer> ids = new ArrayList<>();
+            PeekableIntIterator iterator = matches.getIntIterator();
+            iterator.advanceIfNeeded(after + 1);
+            while (iterator.hasNext() && ids.size() <= limit) {
+                ids.add(iterator.next());
+            }
+            if (ids.size() > limit) {
+                ids = ids.subList(0, limit);
+                ctx.header("X-Next-After", String.valueOf(ids.get(limit - 1)));
+            }
+            ctx.json(candidateDAO.getByIdsAsDTOs(ids));
         } else {
-            candidates = candidateDAO.getAll();
+            // the matching candidates are loaded and written STREAM_PAGE_SIZE at a time
+            int[] ids = matches.toArray();
+            int pages = (ids.length + STREAM_PAGE_SIZE - 1) / STREAM_PAGE_SIZE;
+            ctx.writeJsonStream(IntStream.range(0, pages)
+                    .boxed()
+                    .flatMap(page -> candidateDAO.getByIdsAsDTOs(Arrays.stream(ids,
+                            page * STREAM_PAGE_SIZE, Math.min(ids.length, (page + 1) * STREAM_PAGE_SIZE))
+                            .boxed()
+                            .toList()).stream()));
+        }
+    }
+
+    // cursor based paging: the client passes the last id it got as after, and gets the cursor
+    // for the next page in the X-Next-After header. the header is left out on the last page
+    private void getCandidatePage(Context ctx, int limit, int after) {
+        // asking for one extra row tells us if there is a next page without a count query
+        List<CandidateDTO> candidates = candidateDAO.getPageAsDTOs(after, limit + 1);
+        if (candidates.size() > limit) {
+            candidates = candidates.subList(0, limit);
+            ctx.header("X-Next-After", String.valueOf(candidates.get(limit - 1).getId()));
+        }
+        ctx.json(candidates);
+    }
+
+    // candidates that have all the skills in all and at least one in any (comma separated slugs).
+    // the matching is done on the in-memory index, the database is only asked for the page that is returned.
+    // the total number of matches is in the X-Total-Count header
+    public void matchCandidates(Context ctx) {
+        List<String> all = parseSlugsParam(ctx, "all");
+        List<String> any = parseSlugsParam(ctx, "any");
+        if (all.isEmpty() && any.isEmpty()) {
+            throw new ApiException(400, "At least one skill in all or any is required");
+        }
+        int limit = parseIntParam(ctx, "limit", DEFAULT_PAGE_SIZE);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ApiException(400, "Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        RoaringBitmap matches = skillMatchIndex.match(all, any);
+        List<Integer> ids = new ArrayList<>(Math.min(limit, matches.getCardinality()));
+        for (int id : matches) {
+            if (ids.size() == limit) {
+                break;
+            }
+            ids.add(id);
         }
 
-        List<CandidateDTO> candidateDTOs = candidates.stream()
-                .map(CandidateDTO::new)
-                .collect(Collectors.toList());
-        ctx.json(candidateDTOs);
+        ctx.header("X-Total-Count", String.valueOf(matches.getCardinality()));
+        ctx.json(candidateDAO.getByIdsAsDTOs(ids));
+    }
+
+    private static List<String> parseSlugsParam(Context ctx, String name) {
+        String value = ctx.queryParam(name);
+        List<String> slugs = new ArrayList<>();
+        if (value != null) {
+            for (String slug : value.split(",")) {
+                if (!slug.isBlank()) {
+                    slugs.add(slug.trim());
+                }
+            }
+        }
+        return slugs;
+    }
+
+    private int parseIntParam(Context ctx, String name, int defaultValue) {
+        String value = ctx.queryParam(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Invalid " + name);
+        }
     }
 
     public void getCandidateById(Context ctx) {
         int id = Integer.parseInt(ctx.pathParam("id"));
+
+        // if we know the candidate's current version, an unchanged one is answered without the dao
+        String knownETag = versionTracker.getETag(id);
+        if (knownETag != null && notModified(ctx, knownETag, versionTracker.getLastModified(id))) {
+            return;
+        }
+
+        // taken before the load, so stats that change while we read are never stamped with the new stats version
+        long statsVersion = versionTracker.getStatsVersion();
         Candidate candidate = candidateDAO.getById(id);
 
         if (candidate == null) {
             throw new ApiException(404, "Candidate not found");
         }
 
-        CandidateDTO candidateDTO = new CandidateDTO(candidate);
-        // enriching skills with external api data before returning
-        candidateDTO.setSkills(skillStatsApiClient.enrichSkills(candidateDTO.getSkills()));
-        ctx.json(candidateDTO);
+        // still skips serialization if the client has this version
+        if (notModified(ctx, versionTracker.record(candidate, statsVersion), candidate.getLastModified())) {
+            return;
+        }
+
+        // popularity and salary are already on the skills, copied from the stats api by SkillStatsRefresher
+        ctx.json(new CandidateDTO(candidate));
+    }
+
+    // sets the ETag and Last-Modified headers, and answers with 304 if the client's If-None-Match has the etag
+    private static boolean notModified(Context ctx, String etag, Instant lastModified) {
+        ctx.header("ETag", etag);
+        if (lastModified != null) {
+            ctx.header("Last-Modified", HTTP_DATE.format(lastModified.atZone(ZoneOffset.UTC)));
+        }
+        if (CandidateVersionTracker.matches(ctx.header("If-None-Match"), etag)) {
+            ctx.status(304);
+            return true;
+        }
+        return false;
     }
 
     public void createCandidate(Context ctx) {
@@ -68,6 +268,122 @@ public class CandidateController {
         ctx.status(201).json(responseDTO);
     }
 
+    // creates many candidates in one call. every item gets its own result, so one bad item doesn't fail the rest
+    public void createCandidates(Context ctx) {
+        List<CandidateImportDTO> items = Arrays.asList(ctx.bodyAsClass(CandidateImportDTO[].class));
+
+        if (items.isEmpty()) {
+            throw new ApiException(400, "At least one candidate is required");
+        }
+        if (items.size() > MAX_BULK_SIZE) {
+            throw new ApiException(400, "At most " + MAX_BULK_SIZE + " candidates can be created per request");
+        }
+
+        // all the skills are looked up in one query up front
+        Set<String> slugs = new HashSet<>();
+        for (CandidateImportDTO item : items) {
+            if (item != null && item.getSkills() != null) {
+                for (String slug : item.getSkills()) {
+                    // a missing slug is reported on its item by validateImport
+                    if (slug != null && !slug.isBlank()) {
+                        slugs.add(slug.toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+        }
+        Map<String, Skill> skillsBySlug = skillDAO.getBySlugs(slugs);
+
+        BulkItemResultDTO[] results = new BulkItemResultDTO[items.size()];
+        List<Candidate> chunk = new ArrayList<>();
+        List<Integer> chunkIndexes = new ArrayList<>();
+
+        for (int i = 0; i < items.size(); i++) {
+            CandidateImportDTO item = items.get(i);
+            String error = validateImport(item, skillsBySlug);
+            if (error != null) {
+                results[i] = new BulkItemResultDTO(i, null, error);
+                continue;
+            }
+
+            Candidate candidate = new Candidate(item.getName(), item.getPhone(), item.getEducation());
+            if (item.getSkills() != null) {
+                // only the candidate side owns the join table, so the skills' own collections are left alone
+                item.getSkills().forEach(slug -> candidate.getSkills().add(skillsBySlug.get(slug.toLowerCase(Locale.ROOT))));
+            }
+            chunk.add(candidate);
+            chunkIndexes.add(i);
+
+            if (chunk.size() == BULK_CHUNK_SIZE) {
+                saveChunk(chunk, chunkIndexes, results);
+            }
+        }
+        saveChunk(chunk, chunkIndexes, results);
+
+        int created = 0;
+        for (BulkItemResultDTO result : results) {
+            if (result.getId() != null) {
+                created++;
+            }
+        }
+        ctx.status(created > 0 ? 201 : 400).json(new BulkResultDTO(created, results.length - created, Arrays.asList(results)));
+    }
+
+    // the request body is a csv file (name,phone,education,skills with a header line, skills separated by ;).
+    // it is streamed straight to the database, so it is never held in memory
+    public void importCandidates(Context ctx) {
+        ImportResultDTO result;
+        try (InputStream csv = ctx.bodyInputStream()) {
+            result = candidateDAO.importCsv(csv);
+        } catch (UnsupportedOperationException e) {
+            throw new ApiException(501, e.getMessage());
+        } catch (PersistenceException e) {
+            // the database's message names tables and columns, so the client only gets a fixed one
+            System.out.println("CSV import failed: " + e.getMessage());
+            throw new ApiException(400, "Invalid CSV, expected the columns name,phone,education,skills");
+        } catch (IOException e) {
+            throw new ApiException(400, "Could not read the uploaded file");
+        }
+        ctx.status(201).json(result);
+    }
+
+    private void saveChunk(List<Candidate> chunk, List<Integer> chunkIndexes, BulkItemResultDTO[] results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            candidateDAO.createAll(chunk);
+            for (int i = 0; i < chunk.size(); i++) {
+                results[chunkIndexes.get(i)] = new BulkItemResultDTO(chunkIndexes.get(i), chunk.get(i).getId(), null);
+            }
+        } catch (PersistenceException e) {
+            // the database's message can hold sql and values from other items, so it is only logged
+            System.out.println("Failed to save a bulk chunk of " + chunk.size() + " candidates: " + e.getMessage());
+            for (Integer index : chunkIndexes) {
+                results[index] = new BulkItemResultDTO(index, null, "Could not be saved");
+            }
+        }
+        chunk.clear();
+        chunkIndexes.clear();
+    }
+
+    // returns what is wrong with the item, or null if it can be created
+    private static String validateImport(CandidateImportDTO item, Map<String, Skill> skillsBySlug) {
+        if (item == null || item.getName() == null || item.getName().isEmpty()) {
+            return "Candidate name is required";
+        }
+        if (item.getSkills() != null) {
+            for (String slug : item.getSkills()) {
+                if (slug == null || slug.isBlank()) {
+                    return "Skill slug is required";
+                }
+                if (!skillsBySlug.containsKey(slug.toLowerCase(Locale.ROOT))) {
+                    return "Unknown skill: " + slug;
+                }
+            }
+        }
+        return null;
+    }
+
     public void updateCandidate(Context ctx) {
         int id = Integer.parseInt(ctx.pathParam("id"));
         Candidate existing = candidateDAO.getById(id);
@@ -81,7 +397,17 @@ public class CandidateController {
         existing.setPhone(candidateDTO.getPhone());
         existing.setEducation(candidateDTO.getEducation());
 
-        Candidate updated = candidateDAO.update(existing);
+        Candidate updated;
+        try {
+            updated = candidateDAO.update(existing);
+        } catch (OptimisticLockException e) {
+            throw new ApiException(409, CHANGED_CONCURRENTLY);
+        } catch (RollbackException e) {
+            if (e.getCause() instanceof OptimisticLockException) {
+                throw new ApiException(409, CHANGED_CONCURRENTLY);
+            }
+            throw e;
+        }
         CandidateDTO responseDTO = new CandidateDTO(updated);
         ctx.json(responseDTO);
     }
@@ -101,15 +427,50 @@ public class CandidateController {
     public void addSkillToCandidate(Context ctx) {
         int candidateId = Integer.parseInt(ctx.pathParam("candidateId"));
         int skillId = Integer.parseInt(ctx.pathParam("skillId"));
+        addSkills(ctx, candidateId, List.of(skillId), List.of());
+    }
 
-        Candidate candidate = candidateDAO.getById(candidateId);
-        if (candidate == null) {
+    // adds several skills at once, given by id and/or slug
+    public void addSkillsToCandidate(Context ctx) {
+        int candidateId = Integer.parseInt(ctx.pathParam("id"));
+        SkillAssignmentDTO assignment = ctx.bodyAsClass(SkillAssignmentDTO.class);
+
+        Set<Integer> skillIds = assignment.getSkillIds() != null ? assignment.getSkillIds() : Set.of();
+        Set<String> slugs = assignment.getSlugs() != null ? assignment.getSlugs() : Set.of();
+        if (skillIds.isEmpty() && slugs.isEmpty()) {
+            throw new ApiException(400, "At least one skill id or slug is required");
+        }
+        addSkills(ctx, candidateId, skillIds, slugs);
+    }
+
+    // the dao returns the candidate with its new skills, so the response is built without reading it again
+    private void addSkills(Context ctx, int candidateId, Collection<Integer> skillIds, Collection<String> slugs) {
+        Candidate updated;
+        try {
+            updated = candidateDAO.addSkillsToCandidate(candidateId, skillIds, slugs);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, e.getMessage());
+        } catch (PersistenceException e) {
+            // two adds on the same candidate at once: the loser fails at commit, on the version bump or on a skill
+            // the winner just inserted. both are the same conflict as in updateCandidate, and a retry sees the skills
+            if (isConcurrentChange(e)) {
+                throw new ApiException(409, CHANGED_CONCURRENTLY);
+            }
+            System.out.println("Failed to add skills to candidate " + candidateId + ": " + e.getMessage());
+            throw new ApiException(500, "Skills could not be added");
+        }
+        if (updated == null) {
             throw new ApiException(404, "Candidate not found");
         }
+        ctx.json(new CandidateDTO(updated));
+    }
 
-        candidateDAO.addSkillToCandidate(candidateId, skillId);
-        Candidate updated = candidateDAO.getById(candidateId);
-        CandidateDTO responseDTO = new CandidateDTO(updated);
-        ctx.json(responseDTO);
+    private static boolean isConcurrentChange(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof ConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -0,0 +1,101 @@
+package app.controllers;
+
+import app.metrics.MetricsRegistry;
+import app.services.CircuitBreaker;
+import app.services.SkillStatsApiClient;
+import app.services.SkillStatsRefresher;
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+// request latency per route and status, requests in flight, and the numbers of the stats client and the jvm,
+// all served in the prometheus text format on /metrics. dao timings are recorded by TimedProxy in the same registry
+public class MetricsController {
+    private static final String START_ATTRIBUTE = "metrics.start";
+
+    private final MetricsRegistry registry;
+    private final AtomicLong inFlight = new AtomicLong();
+
+    public MetricsController(MetricsRegistry registry, SkillStatsApiClient skillStatsApiClient,
+                             SkillStatsRefresher skillStatsRefresher) {
+        this.registry = registry;
+
+        registry.gauge("http_requests_in_flight", "Requests being handled right now", "", inFlight::get);
+
+        registry.histogram("skill_stats_upstream_duration_seconds", "Time of requests to the skill stats api", "",
+                skillStatsApiClient.getUpstreamLatency());
+        registry.counter("skill_stats_upstream_failures_total", "Skill stats api requests that failed, timed out or were short circuited", "",
+                skillStatsApiClient::getFailedRequests);
+        registry.counter("skill_stats_coalesced_lookups_total", "Slugs that waited on another caller's request instead of making their own", "",
+                skillStatsApiClient::getCoalescedLookups);
+        registry.counter("skill_stats_stale_refreshes_total", "Refreshes where some skills kept their stored stats because the api failed", "",
+                skillStatsRefresher::getStaleRefreshes);
+        registry.gauge("skill_stats_last_full_refresh_timestamp_seconds", "When every skill was last refreshed, 0 if never", "",
+                () -> skillStatsRefresher.getLastFullRefresh() == null ? 0 : skillStatsRefresher.getLastFullRefresh().getEpochSecond());
+        CircuitBreaker breaker = skillStatsApiClient.getCircuitBreaker();
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            registry.gauge("skill_stats_circuit_breaker_state", "1 for the state the circuit breaker is in",
+                    MetricsRegistry.labels("state", state.name().toLowerCase(Locale.ROOT)), () -> breaker.getState() == state ? 1 : 0);
+        }
+        registry.counter("skill_stats_circuit_breaker_opened_total", "Times the circuit breaker has opened", "",
+                breaker::getTimesOpened);
+        registry.counter("skill_stats_circuit_breaker_short_circuited_total", "Calls turned away by the open circuit breaker", "",
+                breaker::getShortCircuited);
+
+        registerJvmMetrics();
+    }
+
+    public void beforeRequest(Context ctx) {
+        inFlight.incrementAndGet();
+        ctx.attribute(START_ATTRIBUTE, System.nanoTime());
+    }
+
+    // used as javalin's request logger, since after handlers are skipped for requests the jwt check turns away.
+    // the route label is the path pattern, e.g. /api/candidates/{id}, so ids don't make a series each
+    public void requestDone(Context ctx, Float executionTimeMs) {
+        Long start = ctx.attribute(START_ATTRIBUTE);
+        if (start == null) {
+            return;
+        }
+        inFlight.decrementAndGet();
+        // a request that matched no endpoint never gets past the before handlers
+        String route = ctx.handlerType() == HandlerType.BEFORE ? "unmatched" : ctx.endpointHandlerPath();
+        registry.histogram("http_request_duration_seconds", "Time to handle a request, by route and status",
+                        MetricsRegistry.labels("method", ctx.method().name(), "route", route,
+                                "status", Integer.toString(ctx.statusCode())))
+                .record(System.nanoTime() - start);
+    }
+
+    public void getMetrics(Context ctx) {
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8").result(registry.scrape());
+    }
+
+    private void registerJvmMetrics() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        registry.gauge("jvm_memory_used_bytes", "Used jvm memory", MetricsRegistry.labels("area", "heap"),
+                () -> memory.getHeapMemoryUsage().getUsed());
+        registry.gauge("jvm_memory_used_bytes", "Used jvm memory", MetricsRegistry.labels("area", "nonheap"),
+                () -> memory.getNonHeapMemoryUsage().getUsed());
+        registry.gauge("jvm_memory_max_bytes", "Max jvm heap, -1 if there is no limit", MetricsRegistry.labels("area", "heap"),
+                () -> memory.getHeapMemoryUsage().getMax());
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        registry.gauge("jvm_threads_live", "Live jvm threads", "", threads::getThreadCount);
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String labels = MetricsRegistry.labels("gc", gc.getName());
+            registry.counter("jvm_gc_collections_total", "Garbage collections", labels, gc::getCollectionCount);
+            registry.counter("jvm_gc_collection_seconds_total", "Time spent in garbage collection", labels,
+                    () -> gc.getCollectionTime() / 1000.0);
+        }
+
+        registry.gauge("process_uptime_seconds", "Time since the jvm started", "",
+                () -> ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+    }
+}
@@ -1,57 +1,102 @@
 package app.controllers;
 
-import app.dao.CandidateDAO;
-import app.dto.CandidateDTO;
-import app.dto.SkillDTO;
+import app.dto.RankedCandidateDTO;
 import app.dto.TopCandidateDTO;
-import app.entities.Candidate;
-import app.services.SkillStatsApiClient;
+import app.exceptions.ApiException;
+import app.services.CandidateRanker;
+import app.services.PopularityLeaderboard;
 import io.javalin.http.Context;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ReportController {
-    private final CandidateDAO candidateDAO;
-    private final SkillStatsApiClient skillStatsApiClient;
+    private static final int DEFAULT_LIMIT = 10;
+    // both reports serialize up to limit candidates, so neither can be asked for the whole table
+    private static final int MAX_LIMIT = 1000;
 
-    public ReportController(CandidateDAO candidateDAO, SkillStatsApiClient skillStatsApiClient) {
-        this.candidateDAO = candidateDAO;
-        this.skillStatsApiClient = skillStatsApiClient;
+    private final PopularityLeaderboard leaderboard;
+    private final CandidateRanker candidateRanker;
+
+    public ReportController(PopularityLeaderboard leaderboard, CandidateRanker candidateRanker) {
+        this.leaderboard = leaderboard;
+        this.candidateRanker = candidateRanker;
     }
 
     public void getTopCandidateByPopularity(Context ctx) {
-        List<Candidate> candidates = candidateDAO.getAll();
-
-        TopCandidateDTO topCandidate = null;
-        double highestAverage = 0;
+        // the leaderboard is kept up to date on every write, so no database or api calls are needed here
+        TopCandidateDTO topCandidate = leaderboard.getTop();
+        ctx.json(topCandidate);
+    }
 
-        // going through each candidate to find the one with highest average popularity
-        for (Candidate candidate : candidates) {
-            if (candidate.getSkills().isEmpty()) {
-                continue;
+    public void getTopCandidatesByPopularity(Context ctx) {
+        int limit = DEFAULT_LIMIT;
+        String limitParam = ctx.queryParam("limit");
+        if (limitParam != null) {
+            try {
+                limit = Integer.parseInt(limitParam);
+            } catch (NumberFormatException e) {
+                throw new ApiException(400, "Invalid limit");
+            }
+            if (limit < 1 || limit > MAX_LIMIT) {
+                throw new ApiException(400, "Limit must be between 1 and " + MAX_LIMIT);
             }
+        }
 
-            CandidateDTO candidateDTO = new CandidateDTO(candidate);
-            candidateDTO.setSkills(skillStatsApiClient.enrichSkills(candidateDTO.getSkills()));
+        List<TopCandidateDTO> topCandidates = leaderboard.getTop(limit);
+        ctx.json(topCandidates);
+    }
 
-            double sum = 0;
-            int count = 0;
-            for (SkillDTO skill : candidateDTO.getSkills()) {
-                if (skill.getPopularityScore() != null) {
-                    sum += skill.getPopularityScore();
-                    count++;
-                }
+    // best candidates for a job. required and preferred are comma separated skill slugs, each with an optional
+    // weight after a colon, e.g. required=java:2,postgresql&preferred=docker,react:0.5
+    public void getRankedCandidates(Context ctx) {
+        Map<String, Double> required = parseWeightedSkills(ctx.queryParam("required"));
+        Map<String, Double> preferred = parseWeightedSkills(ctx.queryParam("preferred"));
+        if (required.isEmpty() && preferred.isEmpty()) {
+            throw new ApiException(400, "At least one required or preferred skill is needed");
+        }
+
+        int limit = DEFAULT_LIMIT;
+        String limitParam = ctx.queryParam("limit");
+        if (limitParam != null) {
+            try {
+                limit = Integer.parseInt(limitParam);
+            } catch (NumberFormatException e) {
+                throw new ApiException(400, "Invalid limit");
             }
+            if (limit < 1 || limit > MAX_LIMIT) {
+                throw new ApiException(400, "Limit must be between 1 and " + MAX_LIMIT);
+            }
+        }
 
-            if (count > 0) {
-                double average = sum / count;
-                if (average > highestAverage) {
-                    highestAverage = average;
-                    topCandidate = new TopCandidateDTO(candidate.getId(), average);
+        List<RankedCandidateDTO> ranked = candidateRanker.rank(required, preferred, limit);
+        ctx.json(ranked);
+    }
+
+    private static Map<String, Double> parseWeightedSkills(String param) {
+        Map<String, Double> skills = new LinkedHashMap<>();
+        if (param == null) {
+            return skills;
+        }
+        for (String part : param.split(",")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            String[] slugAndWeight = part.split(":", 2);
+            double weight = 1;
+            if (slugAndWeight.length == 2) {
+                try {
+                    weight = Double.parseDouble(slugAndWeight[1]);
+                } catch (NumberFormatException e) {
+                    throw new ApiException(400, "Invalid weight for " + slugAndWeight[0]);
+                }
+                if (!(weight > 0) || Double.isInfinite(weight)) {
+                    throw new ApiException(400, "Weight for " + slugAndWeight[0] + " must be positive");
                 }
             }
+            skills.put(slugAndWeight[0].trim(), weight);
         }
-
-        ctx.json(topCandidate);
+        return skills;
     }
 }
@@ -6,16 +6,25 @@ import app.dto.UserDTO;
 import app.entities.User;
 import app.exceptions.ApiException;
 import app.security.JwtUtil;
+import app.security.PasswordHasher;
 import app.security.Roles;
 import io.javalin.http.Context;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class SecurityController {
     private final UserDAO userDAO;
     private final JwtUtil jwtUtil;
+    private final PasswordHasher passwordHasher;
+    // what happens after bcrypt (database writes, the token) runs here, so the small bcrypt pool only ever hashes.
+    // virtual threads, since that work mostly waits on the database
+    private final ExecutorService afterHashExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
-    public SecurityController(UserDAO userDAO, JwtUtil jwtUtil) {
+    public SecurityController(UserDAO userDAO, JwtUtil jwtUtil, PasswordHasher passwordHasher) {
         this.userDAO = userDAO;
         this.jwtUtil = jwtUtil;
+        this.passwordHasher = passwordHasher;
     }
 
     public void login(Context ctx) {
@@ -27,13 +36,25 @@ public class SecurityController {
 
         User user = userDAO.findByUsername(userDTO.getUsername());
 
-        if (user == null || !user.verifyPassword(userDTO.getPassword())) {
+        if (user == null) {
             throw new ApiException(401, "Invalid username or password");
         }
 
-        String token = jwtUtil.createToken(user);
-        TokenDTO tokenDTO = new TokenDTO(token, user.getUsername());
-        ctx.json(tokenDTO);
+        // bcrypt runs on the hasher's pool, the request thread is released until it is done. the rest of the
+        // login then moves to afterHashExecutor
+        ctx.future(() -> passwordHasher.verifyAsync(userDTO.getPassword(), user.getPassword())
+                .thenAcceptAsync(verification -> {
+                    if (!verification.matches()) {
+                        throw new ApiException(401, "Invalid username or password");
+                    }
+                    // the stored hash was made with another cost, so store the new one now that we know the password
+                    if (verification.getUpgradedHash() != null) {
+                        userDAO.updatePassword(user.getId(), verification.getUpgradedHash());
+                    }
+
+                    String token = jwtUtil.createToken(user);
+                    ctx.json(new TokenDTO(token, user.getUsername()));
+                }, afterHashExecutor));
     }
 
     public void register(Context ctx) {
@@ -48,12 +69,16 @@ public class SecurityController {
             throw new ApiException(400, "Username already exists");
         }
 
-        User user = new User(userDTO.getUsername(), userDTO.getPassword());
-        user.addRole(Roles.USER);
-        User created = userDAO.create(user);
+        ctx.future(() -> passwordHasher.hashAsync(userDTO.getPassword())
+                .thenAcceptAsync(hash -> {
+                    User user = new User();
+                    user.setUsername(userDTO.getUsername());
+                    user.setPassword(hash);
+                    user.addRole(Roles.USER);
+                    User created = userDAO.create(user);
 
-        String token = jwtUtil.createToken(created);
-        TokenDTO tokenDTO = new TokenDTO(token, created.getUsername());
-        ctx.status(201).json(tokenDTO);
+                    String token = jwtUtil.createToken(created);
+                    ctx.status(201).json(new TokenDTO(token, created.getUsername()));
+                }, afterHashExecutor));
     }
 }
@@ -0,0 +1,44 @@
+package app.controllers;
+
+import app.config.HibernateConfig;
+import app.dto.HibernateCacheStatsDTO;
+import app.dto.PoolStatsDTO;
+import app.dto.SkillStatsProviderDTO;
+import app.exceptions.ApiException;
+import app.services.SkillStatsApiClient;
+import app.services.SkillStatsRefresher;
+import com.zaxxer.hikari.HikariDataSource;
+import io.javalin.http.Context;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+
+// exposes internal runtime numbers (caches, connection pool etc.) so we can see how the server is doing
+public class StatsController {
+    private final EntityManagerFactory emf;
+    private final SkillStatsApiClient skillStatsApiClient;
+    private final SkillStatsRefresher skillStatsRefresher;
+
+    public StatsController(EntityManagerFactory emf, SkillStatsApiClient skillStatsApiClient,
+                           SkillStatsRefresher skillStatsRefresher) {
+        this.emf = emf;
+        this.skillStatsApiClient = skillStatsApiClient;
+        this.skillStatsRefresher = skillStatsRefresher;
+    }
+
+    // circuit breaker state, shared requests, and how old the stats on the skill table are
+    public void getSkillStatsProviderStats(Context ctx) {
+        ctx.json(new SkillStatsProviderDTO(skillStatsApiClient, skillStatsRefresher));
+    }
+
+    public void getConnectionPoolStats(Context ctx) {
+        HikariDataSource pool = HibernateConfig.getPool(emf);
+        if (pool == null || pool.getHikariPoolMXBean() == null) {
+            throw new ApiException(404, "Connection pool stats are not available");
+        }
+        ctx.json(new PoolStatsDTO(pool));
+    }
+
+    public void getHibernateCacheStats(Context ctx) {
+        ctx.json(new HibernateCacheStatsDTO(emf.unwrap(SessionFactory.class).getStatistics()));
+    }
+}
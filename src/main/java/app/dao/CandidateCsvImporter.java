@@ -0,0 +1,104 @@
+package app.dao;
+
+import app.dto.ImportResultDTO;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// loads a csv with the columns name,phone,education,skills (skills separated by ;) into a temporary staging table
+// with postgres COPY, and merges it into candidate and candidate_skill with a few set based statements.
+// the file is streamed to the database, so memory use doesn't depend on its size. must run inside a transaction
+class CandidateCsvImporter {
+    // must match the allocationSize of candidate_seq on Candidate
+    private static final int ID_BLOCK_SIZE = 50;
+    private static final int MAX_UNKNOWN_SKILLS = 100;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final String CREATE_STAGING = "CREATE TEMP TABLE candidate_import ("
+            + "line_no bigserial, name text, phone text, education text, skills text, candidate_id integer"
+            + ") ON COMMIT DROP";
+
+    private static final String COPY_STAGING = "COPY candidate_import (name, phone, education, skills) "
+            + "FROM STDIN WITH (FORMAT csv, HEADER true)";
+
+    private static final String DELETE_NAMELESS = "DELETE FROM candidate_import WHERE name IS NULL OR trim(name) = ''";
+
+    // hibernate's pooled optimizer treats every value from candidate_seq as the top of a block of ID_BLOCK_SIZE ids,
+    // so we take whole blocks from the sequence the same way and number the rows into them.
+    // that way the imported ids never collide with the ones hibernate hands out
+    private static final String ASSIGN_IDS = "WITH numbered AS ("
+            + "  SELECT line_no, row_number() OVER (ORDER BY line_no) - 1 AS n FROM candidate_import"
+            + "), blocks AS ("
+            + "  SELECT row_number() OVER () - 1 AS block, hi"
+            + "  FROM (SELECT nextval('candidate_seq') AS hi FROM generate_series(1, ?)) b"
+            + ") "
+            + "UPDATE candidate_import s SET candidate_id = blocks.hi - " + (ID_BLOCK_SIZE - 1) + " + numbered.n % " + ID_BLOCK_SIZE + " "
+            + "FROM numbered JOIN blocks ON blocks.block = numbered.n / " + ID_BLOCK_SIZE + " "
+            + "WHERE s.line_no = numbered.line_no";
+
+    private static final String INSERT_CANDIDATES = "INSERT INTO candidate (id, name, phone, education, version, last_modified) "
+            + "SELECT candidate_id, trim(name), phone, education, 0, now() FROM candidate_import";
+
+    private static final String INSERT_SKILL_LINKS = "INSERT INTO candidate_skill (candidate_id, skill_id) "
+            + "SELECT DISTINCT s.candidate_id, sk.id FROM candidate_import s "
+            + "CROSS JOIN LATERAL unnest(string_to_array(s.skills, ';')) AS slug(value) "
+            + "JOIN skill sk ON lower(sk.slug) = lower(trim(slug.value))";
+
+    private static final String SELECT_UNKNOWN_SKILLS = "SELECT DISTINCT lower(trim(slug.value)) FROM candidate_import s "
+            + "CROSS JOIN LATERAL unnest(string_to_array(s.skills, ';')) AS slug(value) "
+            + "WHERE trim(slug.value) <> '' "
+            + "AND NOT EXISTS (SELECT 1 FROM skill sk WHERE lower(sk.slug) = lower(trim(slug.value))) "
+            + "ORDER BY 1 LIMIT " + MAX_UNKNOWN_SKILLS;
+
+    static boolean isSupported(Connection connection) throws SQLException {
+        return connection.isWrapperFor(PGConnection.class);
+    }
+
+    ImportResultDTO run(Connection connection, InputStream csv) throws SQLException {
+        CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_STAGING);
+
+            long rows;
+            try {
+                rows = copyManager.copyIn(COPY_STAGING, csv, COPY_BUFFER_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            long skipped = statement.executeUpdate(DELETE_NAMELESS);
+            long imported = rows - skipped;
+
+            try (PreparedStatement assignIds = connection.prepareStatement(ASSIGN_IDS)) {
+                assignIds.setLong(1, (imported + ID_BLOCK_SIZE - 1) / ID_BLOCK_SIZE);
+                assignIds.executeUpdate();
+            }
+            statement.executeUpdate(INSERT_CANDIDATES);
+            long skillLinks = statement.executeUpdate(INSERT_SKILL_LINKS);
+
+            List<String> unknownSkills = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery(SELECT_UNKNOWN_SKILLS)) {
+                while (resultSet.next()) {
+                    unknownSkills.add(resultSet.getString(1));
+                }
+            }
+
+            // the planner statistics are way off after a big load, so refresh them right away
+            statement.execute("ANALYZE candidate");
+            statement.execute("ANALYZE candidate_skill");
+
+            return new ImportResultDTO(rows, imported, skipped, skillLinks, unknownSkills);
+        }
+    }
+}
@@ -1,62 +1,256 @@
 package app.dao;
 
+import app.dto.CandidateDTO;
+import app.dto.CandidateSkillRow;
+import app.dto.ImportResultDTO;
+import app.dto.SkillDTO;
 import app.entities.Candidate;
 import app.entities.Skill;
-import app.entities.SkillCategory;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.query.NativeQuery;
 
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class CandidateDAO implements ICandidateDao {
+    private static final String ROW_SELECT = "SELECT new app.dto.CandidateSkillRow(c.id, c.name, c.phone, c.education, "
+            + "s.id, s.name, s.slug, s.category, s.description, s.popularityScore, s.averageSalary) FROM Candidate c LEFT JOIN c.skills s ";
+
+    // same as hibernate.jdbc.batch_size, so every flush sends full batches
+    private static final int BULK_FLUSH_SIZE = 50;
+
     private final EntityManagerFactory emf;
+    private final List<CandidateListener> listeners = new CopyOnWriteArrayList<>();
 
     public CandidateDAO(EntityManagerFactory emf) {
         this.emf = emf;
     }
 
+    @Override
+    public void addListener(CandidateListener listener) {
+        listeners.add(listener);
+    }
+
     @Override
     public Candidate create(Candidate candidate) {
         try (EntityManager em = emf.createEntityManager()) {
             em.getTransaction().begin();
             em.persist(candidate);
             em.getTransaction().commit();
+            notifySaved(candidate);
             return candidate;
         }
     }
 
+    // persists all the candidates in one transaction. the persistence context is flushed and cleared every
+    // BULK_FLUSH_SIZE candidates so the inserts go out as jdbc batches and memory use stays flat
     @Override
-    public Candidate getById(int id) {
+    public List<Candidate> createAll(List<Candidate> candidates) {
         try (EntityManager em = emf.createEntityManager()) {
-            Candidate candidate = em.find(Candidate.class, id);
-            if (candidate != null) {
-                // making sure lazy loaded skills are available after closing entity manager
-                candidate.getSkills().size();
+            em.getTransaction().begin();
+            for (int i = 0; i < candidates.size(); i++) {
+                em.persist(candidates.get(i));
+                if ((i + 1) % BULK_FLUSH_SIZE == 0) {
+                    em.flush();
+                    em.clear();
+                }
             }
-            return candidate;
+            em.getTransaction().commit();
+            candidates.forEach(this::notifySaved);
+            return candidates;
+        }
+    }
+
+    // bulk loads a csv through postgres COPY, see CandidateCsvImporter. throws UnsupportedOperationException
+    // on other databases. the rows never pass through hibernate, so the caches are cleared and the listeners
+    // get the full candidate -> skills map afterwards
+    @Override
+    public ImportResultDTO importCsv(InputStream csv) {
+        ImportResultDTO result;
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            result = em.unwrap(Session.class).doReturningWork(connection -> {
+                if (!CandidateCsvImporter.isSupported(connection)) {
+                    throw new UnsupportedOperationException("CSV import requires PostgreSQL");
+                }
+                return new CandidateCsvImporter().run(connection, csv);
+            });
+            em.getTransaction().commit();
+        }
+
+        emf.getCache().evict(Candidate.class);
+        if (!listeners.isEmpty()) {
+            Map<Integer, Set<String>> slugs = getSkillSlugsByCandidate();
+            listeners.forEach(listener -> listener.candidatesReloaded(slugs));
+        }
+        return result;
+    }
+
+    @Override
+    public Candidate getById(int id) {
+        try (EntityManager em = emf.createEntityManager()) {
+            // fetching the skills in the same query instead of a lazy load afterwards
+            TypedQuery<Candidate> query = em.createQuery(
+                    "SELECT c FROM Candidate c LEFT JOIN FETCH c.skills WHERE c.id = :id", Candidate.class);
+            query.setParameter("id", id);
+            List<Candidate> result = query.getResultList();
+            return result.isEmpty() ? null : result.get(0);
         }
     }
 
     @Override
     public List<Candidate> getAll() {
         try (EntityManager em = emf.createEntityManager()) {
-            TypedQuery<Candidate> query = em.createQuery("SELECT c FROM Candidate c", Candidate.class);
-            List<Candidate> candidates = query.getResultList();
-            // need to initialize skills before returning otherwise we get lazy loading error
-            for (Candidate candidate : candidates) {
-                candidate.getSkills().size();
+            // one query for candidates and their skills, instead of one extra query per candidate
+            TypedQuery<Candidate> query = em.createQuery(
+                    "SELECT DISTINCT c FROM Candidate c LEFT JOIN FETCH c.skills", Candidate.class);
+            return query.getResultList();
+        }
+    }
+
+    // streams every candidate by walking through the table one page at a time, so only a single page is in memory.
+    // each page uses its own entity manager, so there is nothing to close when the stream is done
+    @Override
+    public Stream<CandidateDTO> streamAllAsDTOs(int pageSize) {
+        return pageThrough(pageSize, this::getPageAsDTOs, CandidateDTO::getId);
+    }
+
+    private <T> Stream<T> pageThrough(int pageSize, BiFunction<Integer, Integer, List<T>> loadPage, ToIntFunction<T> idOf) {
+        Iterator<T> pages = new Iterator<>() {
+            private List<T> page;
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                if (page == null) {
+                    page = loadPage.apply(0, pageSize);
+                } else if (index >= page.size() && page.size() == pageSize) {
+                    page = loadPage.apply(idOf.applyAsInt(page.get(page.size() - 1)), pageSize);
+                    index = 0;
+                }
+                return index < page.size();
             }
-            return candidates;
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(index++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // the AsDTOs methods are for read-only paths (lists, filters, reports). they project straight into rows
+    // in a read-only entity manager, so hibernate doesn't create managed entities or keep dirty-checking snapshots.
+    //
+    // keyset pagination: returns up to limit candidates with an id greater than afterId, ordered by id.
+    // unlike offset pagination this stays fast no matter how deep into the table we are
+    @Override
+    public List<CandidateDTO> getPageAsDTOs(int afterId, int limit) {
+        try (EntityManager em = createReadOnlyEntityManager()) {
+            // limiting a join would happen in memory, so the page of ids is found first
+            // and the candidates are then loaded with their skills in a second query
+            TypedQuery<Integer> idQuery = em.createQuery(
+                    "SELECT c.id FROM Candidate c WHERE c.id > :afterId ORDER BY c.id", Integer.class);
+            idQuery.setParameter("afterId", afterId);
+            idQuery.setMaxResults(limit);
+            List<Integer> ids = idQuery.getResultList();
+            if (ids.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            TypedQuery<CandidateSkillRow> query = em.createQuery(ROW_SELECT + "WHERE c.id IN :ids ORDER BY c.id",
+                    CandidateSkillRow.class);
+            query.setParameter("ids", ids);
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+            return toDTOs(query.getResultList());
         }
     }
 
+    // the given candidates with their skills, ordered by id. ids that don't exist are left out
+    @Override
+    public List<CandidateDTO> getByIdsAsDTOs(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try (EntityManager em = createReadOnlyEntityManager()) {
+            TypedQuery<CandidateSkillRow> query = em.createQuery(ROW_SELECT + "WHERE c.id IN :ids ORDER BY c.id",
+                    CandidateSkillRow.class);
+            query.setParameter("ids", ids);
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+            return toDTOs(query.getResultList());
+        }
+    }
+
+    // candidate id -> lower case skill slugs, for candidates that have at least one skill
+    @Override
+    public Map<Integer, Set<String>> getSkillSlugsByCandidate() {
+        try (EntityManager em = createReadOnlyEntityManager()) {
+            TypedQuery<Object[]> query = em.createQuery(
+                    "SELECT c.id, lower(s.slug) FROM Candidate c JOIN c.skills s", Object[].class);
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+            List<Object[]> rows = query.getResultList();
+            Map<Integer, Set<String>> slugs = new HashMap<>();
+            for (Object[] row : rows) {
+                slugs.computeIfAbsent((Integer) row[0], id -> new HashSet<>()).add((String) row[1]);
+            }
+            return slugs;
+        }
+    }
+
+    private EntityManager createReadOnlyEntityManager() {
+        EntityManager em = emf.createEntityManager();
+        em.unwrap(Session.class).setDefaultReadOnly(true);
+        return em;
+    }
+
+    // rows come ordered by candidate, so a linked map keeps that order while grouping the skills
+    private static List<CandidateDTO> toDTOs(List<CandidateSkillRow> rows) {
+        Map<Integer, CandidateDTO> candidates = new LinkedHashMap<>();
+        for (CandidateSkillRow row : rows) {
+            CandidateDTO candidate = candidates.computeIfAbsent(row.getCandidateId(), id ->
+                    new CandidateDTO(id, row.getName(), row.getPhone(), row.getEducation(), new HashSet<>()));
+            if (row.getSkillId() != null) {
+                candidate.getSkills().add(new SkillDTO(row.getSkillId(), row.getSkillName(), row.getSlug(),
+                        row.getCategory(), row.getDescription(), row.getPopularityScore(), row.getAverageSalary()));
+            }
+        }
+        return new ArrayList<>(candidates.values());
+    }
+
     @Override
     public Candidate update(Candidate candidate) {
         try (EntityManager em = emf.createEntityManager()) {
             em.getTransaction().begin();
             Candidate updated = em.merge(candidate);
             em.getTransaction().commit();
+            updated.getSkills().size();
+            notifySaved(updated);
             return updated;
         }
     }
@@ -70,33 +264,102 @@ public class CandidateDAO implements ICandidateDao {
                 em.remove(candidate);
             }
             em.getTransaction().commit();
+            if (candidate != null) {
+                listeners.forEach(listener -> listener.candidateDeleted(id));
+            }
         }
     }
 
     @Override
     public void addSkillToCandidate(int candidateId, int skillId) {
+        addSkillsToCandidate(candidateId, List.of(skillId), List.of());
+    }
+
+    // adds the skills given by id or slug in one transaction: one query for the candidate, one for the skills, one
+    // multi-row insert into candidate_skill for the ones it doesn't have yet and one update of its version.
+    // returns the candidate with all of its skills, or null if it doesn't exist. throws IllegalArgumentException
+    // if any id or slug doesn't match a skill
+    @Override
+    public Candidate addSkillsToCandidate(int candidateId, Collection<Integer> skillIds, Collection<String> slugs) {
+        Set<String> lowerSlugs = new HashSet<>();
+        slugs.forEach(slug -> lowerSlugs.add(slug.toLowerCase(Locale.ROOT)));
+
+        List<Skill> added = new ArrayList<>();
+        Candidate candidate;
         try (EntityManager em = emf.createEntityManager()) {
             em.getTransaction().begin();
-            Candidate candidate = em.find(Candidate.class, candidateId);
-            Skill skill = em.find(Skill.class, skillId);
-            if (candidate != null && skill != null) {
-                candidate.addSkill(skill);
-                em.merge(candidate);
+            TypedQuery<Candidate> candidateQuery = em.createQuery(
+                    "SELECT c FROM Candidate c LEFT JOIN FETCH c.skills WHERE c.id = :id", Candidate.class);
+            candidateQuery.setParameter("id", candidateId);
+            List<Candidate> result = candidateQuery.getResultList();
+            if (result.isEmpty()) {
+                em.getTransaction().rollback();
+                return null;
+            }
+            candidate = result.get(0);
+
+            // an empty IN list isn't valid sql everywhere, so a value that never matches is used instead
+            TypedQuery<Skill> skillQuery = em.createQuery(
+                    "SELECT s FROM Skill s WHERE s.id IN :ids OR lower(s.slug) IN :slugs", Skill.class);
+            skillQuery.setParameter("ids", skillIds.isEmpty() ? List.of(-1) : skillIds);
+            skillQuery.setParameter("slugs", lowerSlugs.isEmpty() ? List.of("") : lowerSlugs);
+            List<Skill> skills = skillQuery.getResultList();
+
+            List<String> unknown = new ArrayList<>();
+            for (Integer id : skillIds) {
+                if (skills.stream().noneMatch(skill -> skill.getId() == id)) {
+                    unknown.add(String.valueOf(id));
+                }
+            }
+            for (String slug : lowerSlugs) {
+                if (skills.stream().noneMatch(skill -> skill.getSlug().equalsIgnoreCase(slug))) {
+                    unknown.add(slug);
+                }
+            }
+            if (!unknown.isEmpty()) {
+                em.getTransaction().rollback();
+                throw new IllegalArgumentException("Unknown skills: " + String.join(", ", unknown));
+            }
+
+            Set<Integer> existing = new HashSet<>();
+            candidate.getSkills().forEach(skill -> existing.add(skill.getId()));
+            for (Skill skill : skills) {
+                if (existing.add(skill.getId())) {
+                    added.add(skill);
+                }
+            }
+
+            if (!added.isEmpty()) {
+                StringBuilder sql = new StringBuilder("INSERT INTO candidate_skill (candidate_id, skill_id) VALUES ");
+                for (int i = 0; i < added.size(); i++) {
+                    sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+                }
+                Query insert = em.createNativeQuery(sql.toString());
+                int position = 1;
+                for (Skill skill : added) {
+                    insert.setParameter(position++, candidateId);
+                    insert.setParameter(position++, skill.getId());
+                }
+                // tells hibernate only candidate_skill changed, so it just invalidates the cached skill collections
+                // instead of the whole second level cache
+                insert.unwrap(NativeQuery.class).addSynchronizedQuerySpace("candidate_skill");
+                insert.executeUpdate();
+                // hibernate doesn't know about the insert, so the candidate is touched to get its version bumped
+                candidate.setLastModified(Instant.now());
             }
             em.getTransaction().commit();
         }
-    }
 
-    @Override
-    public List<Candidate> getByCategory(SkillCategory category) {
-        try (EntityManager em = emf.createEntityManager()) {
-            TypedQuery<Candidate> query = em.createQuery(
-                    "SELECT DISTINCT c FROM Candidate c JOIN c.skills s WHERE s.category = :category",
-                    Candidate.class);
-            query.setParameter("category", category);
-            List<Candidate> candidates = query.getResultList();
-            candidates.forEach(c -> c.getSkills().size());
-            return candidates;
+        if (!added.isEmpty()) {
+            // the collection is only changed once the candidate is detached, so hibernate doesn't write it again.
+            // only the candidate side is updated, the skills' own candidate collections are lazy and not loaded here
+            candidate.getSkills().addAll(added);
+            notifySaved(candidate);
         }
+        return candidate;
+    }
+
+    private void notifySaved(Candidate candidate) {
+        listeners.forEach(listener -> listener.candidateSaved(candidate));
     }
 }
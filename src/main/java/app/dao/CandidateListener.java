@@ -0,0 +1,16 @@
+package app.dao;
+
+import app.entities.Candidate;
+
+import java.util.Map;
+import java.util.Set;
+
+// gets called by CandidateDAO after a write has been committed, so in-memory indexes can stay up to date
+public interface CandidateListener {
+    void candidateSaved(Candidate candidate);
+
+    void candidateDeleted(int candidateId);
+
+    // called after a bulk write that bypassed the entity manager, with every candidate id -> lower case skill slugs
+    void candidatesReloaded(Map<Integer, Set<String>> slugsByCandidate);
+}
@@ -1,11 +1,24 @@
 package app.dao;
 
+import app.dto.CandidateDTO;
+import app.dto.ImportResultDTO;
 import app.entities.Candidate;
-import app.entities.SkillCategory;
 
+import java.io.InputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public interface ICandidateDao extends IDao<Candidate> {
+    List<Candidate> createAll(List<Candidate> candidates);
+    ImportResultDTO importCsv(InputStream csv);
     void addSkillToCandidate(int candidateId, int skillId);
-    List<Candidate> getByCategory(SkillCategory category);
+    Candidate addSkillsToCandidate(int candidateId, Collection<Integer> skillIds, Collection<String> slugs);
+    List<CandidateDTO> getPageAsDTOs(int afterId, int limit);
+    List<CandidateDTO> getByIdsAsDTOs(Collection<Integer> ids);
+    Stream<CandidateDTO> streamAllAsDTOs(int pageSize);
+    Map<Integer, Set<String>> getSkillSlugsByCandidate();
+    void addListener(CandidateListener listener);
 }
@@ -1,6 +1,15 @@
 package app.dao;
 
+import app.dto.external.SkillStatsDTO;
 import app.entities.Skill;
+import app.entities.SkillCategory;
+
+import java.util.Collection;
+import java.util.Map;
 
 public interface ISkillDao extends IDao<Skill> {
+    Map<String, Skill> getBySlugs(Collection<String> slugs);
+    Map<String, SkillCategory> getCategoriesBySlug();
+    Map<String, Integer> getPopularityBySlug();
+    Map<String, SkillStatsDTO> updateStats(Map<String, SkillStatsDTO> statsBySlug);
 }
@@ -1,11 +1,19 @@
 package app.dao;
 
+import app.dto.external.SkillStatsDTO;
 import app.entities.Skill;
+import app.entities.SkillCategory;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.TypedQuery;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class SkillDAO implements ISkillDao {
     private final EntityManagerFactory emf;
@@ -39,6 +47,82 @@ public class SkillDAO implements ISkillDao {
         }
     }
 
+    // looks up all the slugs in one query, the returned map is keyed by lowercased slug
+    @Override
+    public Map<String, Skill> getBySlugs(Collection<String> slugs) {
+        Map<String, Skill> skills = new HashMap<>();
+        if (slugs.isEmpty()) {
+            return skills;
+        }
+        try (EntityManager em = emf.createEntityManager()) {
+            TypedQuery<Skill> query = em.createQuery("SELECT s FROM Skill s WHERE lower(s.slug) IN :slugs", Skill.class);
+            query.setParameter("slugs", slugs.stream()
+                    .map(slug -> slug.toLowerCase(Locale.ROOT))
+                    .collect(Collectors.toSet()));
+            for (Skill skill : query.getResultList()) {
+                skills.put(skill.getSlug().toLowerCase(Locale.ROOT), skill);
+            }
+            return skills;
+        }
+    }
+
+    // lower case slug -> category for every skill
+    @Override
+    public Map<String, SkillCategory> getCategoriesBySlug() {
+        try (EntityManager em = emf.createEntityManager()) {
+            TypedQuery<Object[]> query = em.createQuery("SELECT lower(s.slug), s.category FROM Skill s", Object[].class);
+            Map<String, SkillCategory> categories = new HashMap<>();
+            for (Object[] row : query.getResultList()) {
+                categories.put((String) row[0], (SkillCategory) row[1]);
+            }
+            return categories;
+        }
+    }
+
+    // lower case slug -> popularity for every skill that has stats
+    @Override
+    public Map<String, Integer> getPopularityBySlug() {
+        try (EntityManager em = emf.createEntityManager()) {
+            TypedQuery<Object[]> query = em.createQuery(
+                    "SELECT lower(s.slug), s.popularityScore FROM Skill s WHERE s.popularityScore IS NOT NULL", Object[].class);
+            Map<String, Integer> popularity = new HashMap<>();
+            for (Object[] row : query.getResultList()) {
+                popularity.put((String) row[0], (Integer) row[1]);
+            }
+            return popularity;
+        }
+    }
+
+    // copies popularity and salary from the api onto the skills in one transaction. the provider only changes values
+    // when updatedAt moves, so skills with the same updatedAt are left alone and cause no update statement.
+    // returns the lower case slugs of the skills that were changed
+    @Override
+    public Map<String, SkillStatsDTO> updateStats(Map<String, SkillStatsDTO> statsBySlug) {
+        Map<String, SkillStatsDTO> changed = new HashMap<>();
+        if (statsBySlug.isEmpty()) {
+            return changed;
+        }
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            TypedQuery<Skill> query = em.createQuery("SELECT s FROM Skill s WHERE lower(s.slug) IN :slugs", Skill.class);
+            query.setParameter("slugs", statsBySlug.keySet());
+            for (Skill skill : query.getResultList()) {
+                String slug = skill.getSlug().toLowerCase(Locale.ROOT);
+                SkillStatsDTO stats = statsBySlug.get(slug);
+                Instant updatedAt = stats.getUpdatedAt() != null ? stats.getUpdatedAt().toInstant() : null;
+                if (updatedAt != null && updatedAt.equals(skill.getStatsUpdatedAt())) {
+                    continue;
+                }
+                skill.setPopularityScore(stats.getPopularityScore());
+                skill.setAverageSalary(stats.getAverageSalary());
+                skill.setStatsUpdatedAt(updatedAt);
+                changed.put(slug, stats);
+            }
+            em.getTransaction().commit();
+            return changed;
+        }
+    }
+
     @Override
     public Skill update(Skill skill) {
         try (EntityManager em = emf.createEntityManager()) {
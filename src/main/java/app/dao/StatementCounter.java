@@ -0,0 +1,24 @@
+package app.dao;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+// hibernate calls inspect for every sql statement it prepares, so we use it to count statements per thread.
+// registered through hibernate.session_factory.statement_inspector in the hibernate config
+public class StatementCounter implements StatementInspector {
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    // statements issued on the current thread since the last reset
+    public static int get() {
+        return COUNT.get()[0];
+    }
+}
@@ -22,6 +22,17 @@ public class UserDAO {
         }
     }
 
+    public void updatePassword(int id, String passwordHash) {
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            User user = em.find(User.class, id);
+            if (user != null) {
+                user.setPassword(passwordHash);
+            }
+            em.getTransaction().commit();
+        }
+    }
+
     public User findByUsername(String username) {
         try (EntityManager em = emf.createEntityManager()) {
             TypedQuery<User> query = em.createQuery(
@@ -0,0 +1,20 @@
+package app.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// result for a single item in a bulk request, index is its position in the request body.
+// id is set when the item was created, error when it wasn't
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkItemResultDTO {
+    private int index;
+    private Integer id;
+    private String error;
+}
@@ -1,4 +1,4 @@
-package app.dto.external;
+package app.dto;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -11,6 +11,8 @@ import java.util.List;
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-public class SkillStatsResponseDTO {
-    private List<SkillStatsDTO> data;
+public class BulkResultDTO {
+    private int created;
+    private int failed;
+    private List<BulkItemResultDTO> results;
 }
@@ -0,0 +1,21 @@
+package app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// one candidate in a bulk import, with its skills given by slug
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CandidateImportDTO {
+    private String name;
+    private String phone;
+    private String education;
+    private Set<String> skills = new HashSet<>();
+}
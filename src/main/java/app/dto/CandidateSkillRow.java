@@ -0,0 +1,23 @@
+package app.dto;
+
+import app.entities.SkillCategory;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// one flat row per candidate and skill, filled directly by a jpql constructor expression so no entities are created.
+// the skill fields are null for candidates without skills
+@Getter
+@AllArgsConstructor
+public class CandidateSkillRow {
+    private Integer candidateId;
+    private String name;
+    private String phone;
+    private String education;
+    private Integer skillId;
+    private String skillName;
+    private String slug;
+    private SkillCategory category;
+    private String description;
+    private Integer popularityScore;
+    private Integer averageSalary;
+}
@@ -0,0 +1,25 @@
+package app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.stat.Statistics;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class HibernateCacheStatsDTO {
+    private long secondLevelCacheHits;
+    private long secondLevelCacheMisses;
+    private long secondLevelCachePuts;
+    private long queryExecutions;
+
+    public HibernateCacheStatsDTO(Statistics statistics) {
+        this.secondLevelCacheHits = statistics.getSecondLevelCacheHitCount();
+        this.secondLevelCacheMisses = statistics.getSecondLevelCacheMissCount();
+        this.secondLevelCachePuts = statistics.getSecondLevelCachePutCount();
+        this.queryExecutions = statistics.getQueryExecutionCount();
+    }
+}
@@ -0,0 +1,21 @@
+package app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+// summary of a csv import. skipped rows had no name, unknownSkills lists (up to 100) slugs that matched no skill
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportResultDTO {
+    private long rows;
+    private long imported;
+    private long skipped;
+    private long skillLinks;
+    private List<String> unknownSkills;
+}
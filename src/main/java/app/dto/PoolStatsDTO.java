@@ -0,0 +1,33 @@
+package app.dto;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PoolStatsDTO {
+    private String poolName;
+    private int active;
+    private int idle;
+    private int total;
+    private int pending;
+    private int minIdle;
+    private int maxPoolSize;
+
+    public PoolStatsDTO(HikariDataSource dataSource) {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        this.poolName = dataSource.getPoolName();
+        this.active = pool.getActiveConnections();
+        this.idle = pool.getIdleConnections();
+        this.total = pool.getTotalConnections();
+        this.pending = pool.getThreadsAwaitingConnection();
+        this.minIdle = dataSource.getMinimumIdle();
+        this.maxPoolSize = dataSource.getMaximumPoolSize();
+    }
+}
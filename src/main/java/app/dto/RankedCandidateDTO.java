@@ -0,0 +1,18 @@
+package app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class RankedCandidateDTO {
+    private Integer candidateId;
+    private Double score;
+    private List<String> matchedSkills;
+}
@@ -0,0 +1,19 @@
+package app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// skills to add to a candidate, given by id, by slug or a mix of both
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SkillAssignmentDTO {
+    private Set<Integer> skillIds = new HashSet<>();
+    private Set<String> slugs = new HashSet<>();
+}
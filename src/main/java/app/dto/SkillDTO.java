@@ -28,5 +28,7 @@ public class SkillDTO {
         this.slug = skill.getSlug();
         this.category = skill.getCategory();
         this.description = skill.getDescription();
+        this.popularityScore = skill.getPopularityScore();
+        this.averageSalary = skill.getAverageSalary();
     }
 }
@@ -0,0 +1,45 @@
+package app.dto;
+
+import app.services.CircuitBreaker;
+import app.services.SkillStatsApiClient;
+import app.services.SkillStatsRefresher;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SkillStatsProviderDTO {
+    private CircuitBreaker.State state;
+    private int consecutiveFailures;
+    private Instant lastStateChange;
+    private long timesOpened;
+    private long timesHalfOpened;
+    private long timesClosed;
+    private long shortCircuited;
+    private long failedRequests;
+    private long coalescedLookups;
+    // the skill table keeps the last good stats while the api fails, these say how old they are
+    private Instant lastFullRefresh;
+    private long staleRefreshes;
+
+    public SkillStatsProviderDTO(SkillStatsApiClient client, SkillStatsRefresher refresher) {
+        CircuitBreaker breaker = client.getCircuitBreaker();
+        this.state = breaker.getState();
+        this.consecutiveFailures = breaker.getConsecutiveFailures();
+        this.lastStateChange = breaker.getLastStateChange();
+        this.timesOpened = breaker.getTimesOpened();
+        this.timesHalfOpened = breaker.getTimesHalfOpened();
+        this.timesClosed = breaker.getTimesClosed();
+        this.shortCircuited = breaker.getShortCircuited();
+        this.failedRequests = client.getFailedRequests();
+        this.coalescedLookups = client.getCoalescedLookups();
+        this.lastFullRefresh = refresher.getLastFullRefresh();
+        this.staleRefreshes = refresher.getStaleRefreshes();
+    }
+}
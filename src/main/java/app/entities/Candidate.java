@@ -4,24 +4,44 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NoArgsConstructor
 @Getter
 @Setter
 public class Candidate {
+    // ids come from a sequence that hands out 50 at a time, so inserts can be batched.
+    // with identity columns hibernate has to run every insert on its own to get the id back
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "candidate_seq")
+    @SequenceGenerator(name = "candidate_seq", sequenceName = "candidate_seq", allocationSize = 50)
     private int id;
 
     private String name;
     private String phone;
     private String education;
 
+    // bumped by hibernate on every update, used for optimistic locking and in the etag of the candidate
+    @Version
+    private int version;
+
+    @Column(name = "last_modified")
+    private Instant lastModified;
+
+    // if skills do get lazy loaded for several candidates, they are loaded for up to 50 candidates per query.
+    // the collection is cached too (as skill ids), so a cached candidate gets its skills without any sql
     @ManyToMany
+    @BatchSize(size = 50)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(
             name = "candidate_skill",
             joinColumns = @JoinColumn(name = "candidate_id"),
@@ -35,6 +55,12 @@ public class Candidate {
         this.education = education;
     }
 
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        lastModified = Instant.now();
+    }
+
     // adds skill to candidate and updates both sides of the relationship
     public void addSkill(Skill skill) {
         this.skills.add(skill);
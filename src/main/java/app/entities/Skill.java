@@ -4,11 +4,17 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.Set;
 
+// skills almost never change, so they are kept in the second level cache
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NoArgsConstructor
 @Getter
 @Setter
@@ -24,6 +30,17 @@ public class Skill {
     @Enumerated(EnumType.STRING)
     private SkillCategory category;
 
+    // copied from the skill stats api by SkillStatsRefresher, so requests never have to call the api.
+    // statsUpdatedAt is the provider's updatedAt, used to skip rows that haven't changed
+    @Column(name = "popularity_score")
+    private Integer popularityScore;
+
+    @Column(name = "average_salary")
+    private Integer averageSalary;
+
+    @Column(name = "stats_updated_at")
+    private Instant statsUpdatedAt;
+
     @ManyToMany(mappedBy = "skills")
     private Set<Candidate> candidates = new HashSet<>();
 
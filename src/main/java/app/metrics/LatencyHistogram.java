@@ -0,0 +1,64 @@
+package app.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// latency histogram with one bucket per power of two nanoseconds, from ~16µs to ~34s. finding the bucket is a bit
+// count and recording is two atomic adds, so many threads can record at once without taking any lock
+public class LatencyHistogram implements MetricsRegistry.Sample {
+    // bucket i counts values up to 2^(MIN_SHIFT + i) ns, the extra last bucket is everything above that
+    private static final int MIN_SHIFT = 14;
+    private static final int BUCKETS = 22;
+    private static final String[] UPPER_BOUNDS = new String[BUCKETS];
+
+    static {
+        for (int i = 0; i < BUCKETS; i++) {
+            UPPER_BOUNDS[i] = BigDecimal.valueOf(1L << (MIN_SHIFT + i)).movePointLeft(9).toPlainString();
+        }
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        sumNanos.add(value);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i <= BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos <= 1L << MIN_SHIFT) {
+            return 0;
+        }
+        // the smallest power of two that is >= nanos
+        int shift = 64 - Long.numberOfLeadingZeros(nanos - 1);
+        return Math.min(shift - MIN_SHIFT, BUCKETS);
+    }
+
+    // cumulative buckets as prometheus wants them. the count is the sum of the buckets we read,
+    // so the output is consistent even while other threads keep recording
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts.get(i);
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(UPPER_BOUNDS[i]).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        cumulative += counts.get(BUCKETS);
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum").append(MetricsRegistry.braces(labels)).append(' ')
+                .append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(MetricsRegistry.braces(labels)).append(' ').append(cumulative).append('\n');
+    }
+}
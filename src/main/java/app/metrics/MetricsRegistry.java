@@ -0,0 +1,126 @@
+package app.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+// holds every metric by name and labels and writes them in the prometheus text format.
+// looking up an existing series is a ConcurrentHashMap read, and the series themselves only use atomics and
+// LongAdders, so recording never blocks. only the first use of a new name or label set takes a lock
+public class MetricsRegistry {
+    private final ConcurrentHashMap<String, Family> families = new ConcurrentHashMap<>();
+
+    // labels as built by labels(...), an empty string for none
+    public LatencyHistogram histogram(String name, String help, String labels) {
+        return (LatencyHistogram) family(name, help, "histogram").series(labels, LatencyHistogram::new);
+    }
+
+    public LongAdder counter(String name, String help, String labels) {
+        return ((Counter) family(name, help, "counter").series(labels, Counter::new)).adder;
+    }
+
+    // a value that is read when the metrics are written, for things that are counted elsewhere
+    public void gauge(String name, String help, String labels, DoubleSupplier value) {
+        family(name, help, "gauge").series(labels, () -> new Supplied(value));
+    }
+
+    public void counter(String name, String help, String labels, DoubleSupplier value) {
+        family(name, help, "counter").series(labels, () -> new Supplied(value));
+    }
+
+    // adds a histogram that is owned by someone else, e.g. a client that records its own latency
+    public void histogram(String name, String help, String labels, LatencyHistogram histogram) {
+        family(name, help, "histogram").series(labels, () -> histogram);
+    }
+
+    // families and series are sorted so the output is stable between scrapes
+    public String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        for (Family family : new TreeMap<>(families).values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Sample> series : new TreeMap<>(family.series).entrySet()) {
+                series.getValue().write(out, family.name, series.getKey());
+            }
+        }
+        return out.toString();
+    }
+
+    // key1, value1, key2, value2... -> key1="value1",key2="value2"
+    public static String labels(String... keysAndValues) {
+        StringBuilder labels = new StringBuilder();
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            if (!labels.isEmpty()) {
+                labels.append(',');
+            }
+            labels.append(keysAndValues[i]).append("=\"").append(escape(keysAndValues[i + 1])).append('"');
+        }
+        return labels.toString();
+    }
+
+    static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        }
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    interface Sample {
+        void write(StringBuilder out, String name, String labels);
+    }
+
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final ConcurrentHashMap<String, Sample> series = new ConcurrentHashMap<>();
+
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        private Sample series(String labels, Supplier<Sample> create) {
+            Sample sample = series.get(labels);
+            return sample != null ? sample : series.computeIfAbsent(labels, l -> create.get());
+        }
+    }
+
+    private static final class Counter implements Sample {
+        private final LongAdder adder = new LongAdder();
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            out.append(name).append(braces(labels)).append(' ').append(adder.sum()).append('\n');
+        }
+    }
+
+    private static final class Supplied implements Sample {
+        private final DoubleSupplier value;
+
+        private Supplied(DoubleSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            out.append(name).append(braces(labels)).append(' ').append(value.getAsDouble()).append('\n');
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package app.metrics;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// wraps an interface implementation so the time of every call is recorded per method, e.g. a dao behind its
+// interface. the target doesn't have to know anything about metrics
+public final class TimedProxy {
+    private static final String DURATION = "dao_call_duration_seconds";
+    private static final String ERRORS = "dao_call_errors_total";
+
+    private TimedProxy() {
+    }
+
+    public static <T> T wrap(Class<T> type, T target, MetricsRegistry registry, String name) {
+        // looked up once per method, so a call only does a map read besides the timing
+        Map<Method, LatencyHistogram> durations = new ConcurrentHashMap<>();
+        Map<Method, LongAdder> errors = new ConcurrentHashMap<>();
+
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(target, args);
+            }
+            LatencyHistogram duration = durations.computeIfAbsent(method, m -> registry.histogram(DURATION,
+                    "Time spent in dao calls", MetricsRegistry.labels("dao", name, "method", m.getName())));
+            LongAdder errorCount = errors.computeIfAbsent(method, m -> registry.counter(ERRORS,
+                    "Dao calls that threw", MetricsRegistry.labels("dao", name, "method", m.getName())));
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                errorCount.increment();
+                duration.record(System.nanoTime() - start);
+                // the caller must see the dao's own exception, not the reflection wrapper
+                throw e.getCause();
+            }
+            if (method.getReturnType() == Stream.class && result != null) {
+                // a stream does its work while it is read, so it is timed until it is used up or closed
+                return timed((Stream<?>) result, start, duration, errorCount);
+            }
+            duration.record(System.nanoTime() - start);
+            return result;
+        });
+        return type.cast(proxy);
+    }
+
+    // the time is recorded once, when the stream runs out, fails or is closed. a stream that is dropped
+    // halfway without being closed is never recorded, so callers should close it
+    private static <E> Stream<E> timed(Stream<E> stream, long start, LatencyHistogram duration, LongAdder errorCount) {
+        AtomicBoolean recorded = new AtomicBoolean();
+        Runnable done = () -> {
+            if (recorded.compareAndSet(false, true)) {
+                duration.record(System.nanoTime() - start);
+            }
+        };
+        return StreamSupport.stream(new TimedSpliterator<>(stream.spliterator(), done, errorCount), stream.isParallel())
+                .onClose(done)
+                .onClose(stream::close);
+    }
+
+    // reads the source one element at a time, so errors the dao throws while the stream is consumed are counted too.
+    // errors from the consumer itself, e.g. a client that hung up, are not the dao's and only end the timing
+    private static final class TimedSpliterator<E> implements Spliterator<E> {
+        private final Spliterator<E> source;
+        private final Runnable done;
+        private final LongAdder errorCount;
+        private boolean consumerFailed;
+
+        private TimedSpliterator(Spliterator<E> source, Runnable done, LongAdder errorCount) {
+            this.source = source;
+            this.done = done;
+            this.errorCount = errorCount;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            boolean advanced;
+            try {
+                advanced = source.tryAdvance(element -> {
+                    try {
+                        action.accept(element);
+                    } catch (RuntimeException | Error e) {
+                        consumerFailed = true;
+                        throw e;
+                    }
+                });
+            } catch (RuntimeException | Error e) {
+                if (!consumerFailed) {
+                    errorCount.increment();
+                }
+                done.run();
+                throw e;
+            }
+            if (!advanced) {
+                done.run();
+            }
+            return advanced;
+        }
+
+        // not split, the dao streams are read in order anyway
+        @Override
+        public Spliterator<E> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return source.characteristics();
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package app.routes;
 
 import app.controllers.CandidateController;
+import app.controllers.MetricsController;
 import app.controllers.ReportController;
 import app.controllers.SecurityController;
+import app.controllers.StatsController;
 import app.exceptions.ExceptionHandler;
 import app.security.JwtUtil;
 import app.security.Roles;
@@ -24,8 +26,14 @@ public class Routes {
     public static void configureRoutes(Javalin app, CandidateController candidateController,
                                        ReportController reportController,
                                        SecurityController securityController,
+                                       StatsController statsController,
+                                       MetricsController metricsController,
                                        JwtUtil jwtUtil) {
 
+        // timing every request, registered first so the time spent on the jwt check is included.
+        // the time is recorded by the request logger set up in Javalin.create, which also runs for rejected requests
+        app.before(metricsController::beforeRequest);
+
         // jwt token validation happens here before routes are executed
         app.beforeMatched(ctx -> {
             Set<RouteRole> routeRoles = ctx.routeRoles();
@@ -63,13 +71,28 @@ public class Routes {
 
         // candidate endpoints need authentication
         app.get("/api/candidates", candidateController::getAllCandidates, Role.ANYONE);
+        // registered before {id} so "match" isn't taken as an id
+        app.get("/api/candidates/match", candidateController::matchCandidates, Role.USER);
         app.get("/api/candidates/{id}", candidateController::getCandidateById, Role.USER);
         app.post("/api/candidates", candidateController::createCandidate, Role.USER);
+        app.post("/api/candidates/bulk", candidateController::createCandidates, Role.USER);
+        app.post("/api/candidates/import", candidateController::importCandidates, Role.ADMIN);
         app.put("/api/candidates/{id}", candidateController::updateCandidate, Role.USER);
         app.delete("/api/candidates/{id}", candidateController::deleteCandidate, Role.ADMIN);
+        app.put("/api/candidates/{id}/skills", candidateController::addSkillsToCandidate, Role.USER);
         app.put("/api/candidates/{candidateId}/skills/{skillId}", candidateController::addSkillToCandidate, Role.USER);
 
         // report endpoint for analytics
         app.get("/api/reports/candidates/top-by-popularity", reportController::getTopCandidateByPopularity, Role.USER);
+        app.get("/api/reports/candidates/leaderboard", reportController::getTopCandidatesByPopularity, Role.USER);
+        app.get("/api/reports/candidates/ranked", reportController::getRankedCandidates, Role.USER);
+
+        // runtime stats are only for admins
+        app.get("/api/stats/skill-stats-provider", statsController::getSkillStatsProviderStats, Role.ADMIN);
+        app.get("/api/stats/connection-pool", statsController::getConnectionPoolStats, Role.ADMIN);
+        app.get("/api/stats/hibernate-cache", statsController::getHibernateCacheStats, Role.ADMIN);
+
+        // prometheus scrapes without a jwt, so this is open and should be kept off the public network
+        app.get("/metrics", metricsController::getMetrics, Role.ANYONE);
     }
 }
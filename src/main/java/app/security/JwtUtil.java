@@ -7,17 +7,32 @@ import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class JwtUtil {
+    private static final int MAX_CACHED_TOKENS = 10_000;
+
     private final Algorithm algorithm;
     private final String issuer = "candidate-matcher-api";
     private final long expirationTime = 3600000; // 1 hour
+    // the verifier is thread safe, so it is built once instead of on every request
+    private final JWTVerifier verifier;
+    // tokens that already passed verification, keyed by a sha-256 digest of the token so we don't keep the raw tokens
+    private final ConcurrentHashMap<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
 
     public JwtUtil(String secret) {
         this.algorithm = Algorithm.HMAC256(secret);
+        this.verifier = JWT.require(algorithm)
+                .withIssuer(issuer)
+                .build();
     }
 
     public String createToken(User user) {
@@ -34,20 +49,68 @@ public class JwtUtil {
     }
 
     public DecodedJWT verifyToken(String token) throws JWTVerificationException {
-        JWTVerifier verifier = JWT.require(algorithm)
-                .withIssuer(issuer)
-                .build();
         return verifier.verify(token);
     }
 
     public String extractUsername(String token) {
-        DecodedJWT jwt = verifyToken(token);
-        return jwt.getSubject();
+        return verifyCached(token).username;
     }
 
     public Set<String> extractRoles(String token) {
+        return verifyCached(token).roles;
+    }
+
+    // a token seen before is answered with a single map lookup until it expires,
+    // only new tokens go through signature verification and claim decoding
+    private VerifiedToken verifyCached(String token) {
+        String key = digest(token);
+        long now = System.currentTimeMillis();
+
+        VerifiedToken cached = verifiedTokens.get(key);
+        if (cached != null) {
+            if (cached.expiresAt > now) {
+                return cached;
+            }
+            verifiedTokens.remove(key, cached);
+        }
+
+        // throws if the token is invalid or expired, in which case nothing is cached
         DecodedJWT jwt = verifyToken(token);
-        return jwt.getClaim("roles").asList(String.class).stream()
-                .collect(Collectors.toSet());
+        List<String> roles = jwt.getClaim("roles").asList(String.class);
+        VerifiedToken verified = new VerifiedToken(
+                jwt.getSubject(),
+                roles != null ? Set.copyOf(roles) : Set.of(),
+                jwt.getExpiresAt() != null ? jwt.getExpiresAt().getTime() : now + expirationTime);
+
+        if (verifiedTokens.size() >= MAX_CACHED_TOKENS) {
+            verifiedTokens.values().removeIf(t -> t.expiresAt <= now);
+        }
+        // if it is still full the token just isn't cached, it will be verified again next time
+        if (verifiedTokens.size() < MAX_CACHED_TOKENS) {
+            verifiedTokens.put(key, verified);
+        }
+        return verified;
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // every java runtime is required to support sha-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class VerifiedToken {
+        private final String username;
+        private final Set<String> roles;
+        private final long expiresAt;
+
+        private VerifiedToken(String username, Set<String> roles, long expiresAt) {
+            this.username = username;
+            this.roles = roles;
+            this.expiresAt = expiresAt;
+        }
     }
 }
@@ -0,0 +1,102 @@
+package app.security;
+
+import app.exceptions.ApiException;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// runs bcrypt on its own small thread pool so a burst of logins can't take every request thread.
+// the queue is bounded, and when it is full the request is turned away with a 503 instead of piling up
+public class PasswordHasher {
+    private final int cost;
+    private final ThreadPoolExecutor executor;
+
+    public PasswordHasher(int cost, int threads, int queueSize) {
+        if (cost < 4 || cost > 31) {
+            throw new IllegalArgumentException("BCrypt cost must be between 4 and 31, was " + cost);
+        }
+        this.cost = cost;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bcrypt-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public CompletableFuture<String> hashAsync(String password) {
+        return submit(() -> hash(password));
+    }
+
+    // checks the password, and if it matches but the stored hash was made with another cost,
+    // also computes a new hash with the configured cost in the same task
+    public CompletableFuture<Verification> verifyAsync(String password, String storedHash) {
+        return submit(() -> {
+            if (!BCrypt.checkpw(password, storedHash)) {
+                return new Verification(false, null);
+            }
+            return new Verification(true, needsRehash(storedHash) ? hash(password) : null);
+        });
+    }
+
+    public String hash(String password) {
+        return BCrypt.hashpw(password, BCrypt.gensalt(cost));
+    }
+
+    public boolean needsRehash(String storedHash) {
+        return costOf(storedHash) != cost;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    // bcrypt hashes look like $2a$10$..., where 10 is the cost. returns -1 if the hash doesn't look like that
+    static int costOf(String storedHash) {
+        if (storedHash == null || storedHash.length() < 7 || storedHash.charAt(0) != '$' || storedHash.charAt(6) != '$') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(storedHash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            throw new ApiException(503, "Too many login requests, please try again later");
+        }
+    }
+
+    public static final class Verification {
+        private final boolean matches;
+        private final String upgradedHash;
+
+        private Verification(boolean matches, String upgradedHash) {
+            this.matches = matches;
+            this.upgradedHash = upgradedHash;
+        }
+
+        public boolean matches() {
+            return matches;
+        }
+
+        // null unless the password matched and the stored hash used a different cost
+        public String getUpgradedHash() {
+            return upgradedHash;
+        }
+    }
+}
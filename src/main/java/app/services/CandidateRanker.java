@@ -0,0 +1,133 @@
+package app.services;
+
+import app.dao.ISkillDao;
+import app.dto.RankedCandidateDTO;
+import app.entities.Skill;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// ranks candidates for a job given as required and preferred skills with weights. candidates must have every
+// required skill (or, without required skills, at least one preferred skill). each skill they have adds its weight,
+// scaled up by how popular and how well paid the skill is. scoring runs over primitive arrays straight from the
+// skill index and keeps only the best k in a heap, so nothing is loaded from the database
+public class CandidateRanker {
+    // below this many candidates it isn't worth splitting the work across threads
+    private static final int PARALLEL_THRESHOLD = 50_000;
+    private static final int MIN_CHUNK_SIZE = 8_192;
+
+    private final SkillMatchIndex skillMatchIndex;
+    private final ISkillDao skillDAO;
+
+    public CandidateRanker(SkillMatchIndex skillMatchIndex, ISkillDao skillDAO) {
+        this.skillMatchIndex = skillMatchIndex;
+        this.skillDAO = skillDAO;
+    }
+
+    // skill slug -> weight for both maps, the weights must be positive. returns at most limit candidates, best first
+    public List<RankedCandidateDTO> rank(Map<String, Double> required, Map<String, Double> preferred, int limit) {
+        if (required.isEmpty() && preferred.isEmpty()) {
+            throw new IllegalArgumentException("At least one required or preferred skill is needed");
+        }
+
+        // every skill in the query with its weight, required first. a skill given twice keeps the highest weight
+        Map<String, Double> weights = new LinkedHashMap<>();
+        required.forEach((slug, weight) -> weights.merge(normalize(slug), weight, Math::max));
+        preferred.forEach((slug, weight) -> weights.merge(normalize(slug), weight, Math::max));
+
+        String[] slugs = weights.keySet().toArray(new String[0]);
+        RoaringBitmap[] holders = new RoaringBitmap[slugs.length];
+        for (int i = 0; i < slugs.length; i++) {
+            holders[i] = skillMatchIndex.candidatesWith(slugs[i]);
+        }
+        double[] values = skillValues(slugs, weights);
+
+        RoaringBitmap pool = required.isEmpty()
+                ? skillMatchIndex.match(List.of(), preferred.keySet())
+                : skillMatchIndex.match(required.keySet(), List.of());
+        int[] candidateIds = pool.toArray();
+
+        TopK top;
+        if (candidateIds.length < PARALLEL_THRESHOLD) {
+            top = score(candidateIds, 0, candidateIds.length, holders, values, limit);
+        } else {
+            int chunkSize = Math.max(MIN_CHUNK_SIZE, candidateIds.length / (Runtime.getRuntime().availableProcessors() * 4));
+            int chunks = (candidateIds.length + chunkSize - 1) / chunkSize;
+            top = IntStream.range(0, chunks)
+                    .parallel()
+                    .mapToObj(chunk -> score(candidateIds, chunk * chunkSize,
+                            Math.min(candidateIds.length, (chunk + 1) * chunkSize), holders, values, limit))
+                    .reduce(TopK::merge)
+                    .orElseGet(() -> new TopK(limit));
+        }
+
+        int[] topIds = new int[top.size()];
+        double[] topScores = new double[top.size()];
+        top.drainSorted(topIds, topScores);
+
+        List<RankedCandidateDTO> ranked = new ArrayList<>(topIds.length);
+        for (int i = 0; i < topIds.length; i++) {
+            List<String> matched = new ArrayList<>();
+            for (int s = 0; s < slugs.length; s++) {
+                if (holders[s].contains(topIds[i])) {
+                    matched.add(slugs[s]);
+                }
+            }
+            ranked.add(new RankedCandidateDTO(topIds[i], topScores[i], matched));
+        }
+        return ranked;
+    }
+
+    private static TopK score(int[] candidateIds, int from, int to, RoaringBitmap[] holders, double[] values, int limit) {
+        TopK top = new TopK(limit);
+        for (int i = from; i < to; i++) {
+            int id = candidateIds[i];
+            double score = 0;
+            for (int s = 0; s < holders.length; s++) {
+                if (holders[s].contains(id)) {
+                    score += values[s];
+                }
+            }
+            top.offer(id, score);
+        }
+        return top;
+    }
+
+    // weight * (1 + popularity / 100 + salary / highest salary in the query). skills without stats count their weight.
+    // the stats are read from the skill table (kept fresh by SkillStatsRefresher), one query for all the slugs
+    private double[] skillValues(String[] slugs, Map<String, Double> weights) {
+        Map<String, Skill> stats = skillDAO.getBySlugs(weights.keySet());
+
+        double maxSalary = 0;
+        for (Skill skill : stats.values()) {
+            if (skill.getAverageSalary() != null) {
+                maxSalary = Math.max(maxSalary, skill.getAverageSalary());
+            }
+        }
+
+        double[] values = new double[slugs.length];
+        for (int i = 0; i < slugs.length; i++) {
+            double factor = 1;
+            Skill skill = stats.get(slugs[i]);
+            if (skill != null) {
+                if (skill.getPopularityScore() != null) {
+                    factor += skill.getPopularityScore() / 100.0;
+                }
+                if (skill.getAverageSalary() != null && maxSalary > 0) {
+                    factor += (double) skill.getAverageSalary() / maxSalary;
+                }
+            }
+            values[i] = weights.get(slugs[i]) * factor;
+        }
+        return values;
+    }
+
+    private static String normalize(String slug) {
+        return slug.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,148 @@
+package app.services;
+
+import app.dao.CandidateListener;
+import app.entities.Candidate;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// keeps the etags of candidates in memory so conditional requests can be answered without going to the database.
+// the collection gets a counter that moves on every write, single candidates use their @Version.
+// a candidate is only known here once it has been loaded or saved since startup, and at most maxTracked of them are
+public class CandidateVersionTracker implements CandidateListener {
+    private static final int DEFAULT_MAX_TRACKED = 100_000;
+
+    // part of every etag, so an etag from before a restart never matches, even though the counter starts over
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong collectionVersion = new AtomicLong();
+    // the skill stats are part of every candidate response but not of its @Version, so they get their own counter
+    private final AtomicLong statsVersion = new AtomicLong();
+    private volatile Instant collectionLastModified = Instant.now();
+    private final Map<Integer, Version> versions = new ConcurrentHashMap<>();
+    private final int maxTracked;
+
+    public CandidateVersionTracker() {
+        this(DEFAULT_MAX_TRACKED);
+    }
+
+    // candidates beyond maxTracked are not remembered, their requests just go to the dao as before
+    public CandidateVersionTracker(int maxTracked) {
+        this.maxTracked = maxTracked;
+    }
+
+    public String getCollectionETag() {
+        return "W/\"" + bootId + "-" + collectionVersion.get() + "\"";
+    }
+
+    public Instant getCollectionLastModified() {
+        return collectionLastModified;
+    }
+
+    // null if the candidate hasn't been seen since startup
+    public String getETag(int candidateId) {
+        Version version = versions.get(candidateId);
+        return version != null ? version.etag : null;
+    }
+
+    public Instant getLastModified(int candidateId) {
+        Version version = versions.get(candidateId);
+        return version != null ? version.lastModified : null;
+    }
+
+    // read before a candidate is loaded and passed to record, see there
+    public long getStatsVersion() {
+        return statsVersion.get();
+    }
+
+    // remembers the version of a candidate that was loaded, and returns its etag. statsVersion is the stats version
+    // from before the load. a reader that loaded an older version than a concurrent write, or loaded it before the
+    // stats changed, still gets the etag of what it read but never replaces the newer entry
+    public String record(Candidate candidate, long statsVersion) {
+        Version version = new Version(
+                "W/\"" + bootId + "-" + candidate.getId() + "-" + candidate.getVersion() + "-" + statsVersion + "\"",
+                candidate.getLastModified(), candidate.getVersion(), statsVersion);
+        if (versions.size() >= maxTracked && !versions.containsKey(candidate.getId())) {
+            return version.etag;
+        }
+        versions.merge(candidate.getId(), version, (old, loaded) -> loaded.isNewerThan(old) ? loaded : old);
+        // skillStatsChanged bumps the counter before it clears, so an entry that slipped in after the clear is
+        // taken out here
+        if (statsVersion != this.statsVersion.get()) {
+            versions.remove(candidate.getId(), version);
+        }
+        return version.etag;
+    }
+
+    @Override
+    public void candidateSaved(Candidate candidate) {
+        record(candidate, statsVersion.get());
+        collectionChanged();
+    }
+
+    @Override
+    public void candidateDeleted(int candidateId) {
+        versions.remove(candidateId);
+        collectionChanged();
+    }
+
+    @Override
+    public void candidatesReloaded(Map<Integer, Set<String>> slugsByCandidate) {
+        // we only get the skills here, so the candidates are loaded again before we hand out their etags
+        versions.clear();
+        collectionChanged();
+    }
+
+    // called when the skill stats have changed, which changes every candidate that has one of those skills
+    public void skillStatsChanged() {
+        statsVersion.incrementAndGet();
+        versions.clear();
+        collectionChanged();
+    }
+
+    // true if the If-None-Match header value lists the etag, or is *. etags are compared weakly as the spec says
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String opaque = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || stripWeak(value).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void collectionChanged() {
+        collectionVersion.incrementAndGet();
+        collectionLastModified = Instant.now();
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static final class Version {
+        private final String etag;
+        private final Instant lastModified;
+        private final int candidateVersion;
+        private final long statsVersion;
+
+        private Version(String etag, Instant lastModified, int candidateVersion, long statsVersion) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.candidateVersion = candidateVersion;
+            this.statsVersion = statsVersion;
+        }
+
+        private boolean isNewerThan(Version other) {
+            return candidateVersion != other.candidateVersion
+                    ? candidateVersion > other.candidateVersion
+                    : statsVersion > other.statsVersion;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package app.services;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+
+// stops calling a dependency after it has failed failureThreshold times in a row. while open, calls are turned away
+// right away instead of waiting for timeouts. after openMillis one probe call is let through (half open), and
+// depending on how it goes the breaker closes again or stays open for another round
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private Instant lastStateChange = Instant.now();
+
+    private final LongAdder timesOpened = new LongAdder();
+    private final LongAdder timesHalfOpened = new LongAdder();
+    private final LongAdder timesClosed = new LongAdder();
+    private final LongAdder shortCircuited = new LongAdder();
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be at least 1, was " + failureThreshold);
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    // true if the call may go ahead. callers that get true must report back with recordSuccess or recordFailure
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            moveTo(State.HALF_OPEN);
+            return true;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        // open, or half open with the probe still running
+        shortCircuited.increment();
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        if (state != State.CLOSED) {
+            moveTo(State.CLOSED);
+        }
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            openedAt = System.currentTimeMillis();
+            moveTo(State.OPEN);
+        }
+    }
+
+    // must be called while holding the lock
+    private void moveTo(State next) {
+        System.out.println("Circuit breaker " + name + ": " + state + " -> " + next);
+        state = next;
+        lastStateChange = Instant.now();
+        switch (next) {
+            case OPEN -> timesOpened.increment();
+            case HALF_OPEN -> timesHalfOpened.increment();
+            case CLOSED -> timesClosed.increment();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized Instant getLastStateChange() {
+        return lastStateChange;
+    }
+
+    public long getTimesOpened() {
+        return timesOpened.sum();
+    }
+
+    public long getTimesHalfOpened() {
+        return timesHalfOpened.sum();
+    }
+
+    public long getTimesClosed() {
+        return timesClosed.sum();
+    }
+
+    public long getShortCircuited() {
+        return shortCircuited.sum();
+    }
+}
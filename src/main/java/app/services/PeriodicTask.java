@@ -0,0 +1,47 @@
+package app.services;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// runs a task on its own daemon thread, first after the initial delay and then with the interval between the end
+// of one run and the start of the next. an exception would cancel the scheduled task, so it is logged and the next
+// run tries again
+final class PeriodicTask {
+    private final String name;
+    private final Runnable task;
+    private ScheduledExecutorService scheduler;
+
+    PeriodicTask(String name, Runnable task) {
+        this.name = name;
+        this.task = task;
+    }
+
+    synchronized void start(long initialDelay, long interval, TimeUnit unit) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runQuietly, initialDelay, interval, unit);
+    }
+
+    synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // one run on the calling thread, with the same error handling as the scheduled runs
+    void runQuietly() {
+        try {
+            task.run();
+        } catch (Exception e) {
+            System.out.println(name + " failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package app.services;
+
+import app.dao.CandidateListener;
+import app.dto.TopCandidateDTO;
+import app.entities.Candidate;
+import app.entities.Skill;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// keeps the average skill popularity of every candidate in memory, sorted so the top candidates can be read without
+// going to the database. popularity comes from the skill table, and it is kept up to date through the CandidateListener
+// callbacks and by SkillStatsRefresher
+public class PopularityLeaderboard implements CandidateListener {
+    private static final Comparator<Entry> BY_AVERAGE = Comparator
+            .comparingDouble((Entry e) -> e.average).reversed()
+            .thenComparingInt(e -> e.candidateId);
+
+    private final Map<Integer, Set<String>> slugsByCandidate = new HashMap<>();
+    private final Map<String, Integer> popularityBySlug = new HashMap<>();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> ranking = new TreeSet<>(BY_AVERAGE);
+
+    // replaces everything with the given candidate id -> skill slugs map and slug -> popularity map
+    public synchronized void rebuild(Map<Integer, Set<String>> slugs, Map<String, Integer> popularity) {
+        popularityBySlug.clear();
+        popularityBySlug.putAll(popularity);
+        rebuild(slugs);
+    }
+
+    // takes new popularity values for some slugs (from SkillStatsRefresher) and recalculates the averages
+    public synchronized void updatePopularity(Map<String, Integer> popularity) {
+        if (popularity.isEmpty()) {
+            return;
+        }
+        popularityBySlug.putAll(popularity);
+        new HashMap<>(slugsByCandidate).forEach(this::put);
+    }
+
+    @Override
+    public synchronized void candidateSaved(Candidate candidate) {
+        Set<String> slugs = new HashSet<>();
+        for (Skill skill : candidate.getSkills()) {
+            String slug = skill.getSlug().toLowerCase(Locale.ROOT);
+            slugs.add(slug);
+            if (skill.getPopularityScore() != null) {
+                popularityBySlug.put(slug, skill.getPopularityScore());
+            }
+        }
+        put(candidate.getId(), slugs);
+    }
+
+    @Override
+    public synchronized void candidateDeleted(int candidateId) {
+        slugsByCandidate.remove(candidateId);
+        Entry entry = entries.remove(candidateId);
+        if (entry != null) {
+            ranking.remove(entry);
+        }
+    }
+
+    // the popularity values stay, only the candidates are replaced
+    @Override
+    public synchronized void candidatesReloaded(Map<Integer, Set<String>> slugs) {
+        rebuild(slugs);
+    }
+
+    // returns null if no candidate has any skill with popularity data
+    public synchronized TopCandidateDTO getTop() {
+        return ranking.isEmpty() ? null : ranking.first().toDTO();
+    }
+
+    public synchronized List<TopCandidateDTO> getTop(int limit) {
+        List<TopCandidateDTO> top = new ArrayList<>();
+        for (Entry entry : ranking) {
+            if (top.size() >= limit) {
+                break;
+            }
+            top.add(entry.toDTO());
+        }
+        return top;
+    }
+
+    // must be called while holding the lock
+    private void put(int candidateId, Set<String> slugs) {
+        slugsByCandidate.put(candidateId, slugs);
+        Entry old = entries.remove(candidateId);
+        if (old != null) {
+            ranking.remove(old);
+        }
+
+        double sum = 0;
+        int count = 0;
+        for (String slug : slugs) {
+            Integer popularity = popularityBySlug.get(slug);
+            if (popularity != null) {
+                sum += popularity;
+                count++;
+            }
+        }
+
+        // candidates without any popularity data are left out, same as the old report did
+        if (count > 0 && sum > 0) {
+            Entry entry = new Entry(candidateId, sum / count);
+            entries.put(candidateId, entry);
+            ranking.add(entry);
+        }
+    }
+
+    // must be called while holding the lock
+    private void rebuild(Map<Integer, Set<String>> slugs) {
+        slugsByCandidate.clear();
+        entries.clear();
+        ranking.clear();
+        slugs.forEach(this::put);
+    }
+
+    private static final class Entry {
+        private final int candidateId;
+        private final double average;
+
+        private Entry(int candidateId, double average) {
+            this.candidateId = candidateId;
+            this.average = average;
+        }
+
+        private TopCandidateDTO toDTO() {
+            return new TopCandidateDTO(candidateId, average);
+        }
+    }
+}
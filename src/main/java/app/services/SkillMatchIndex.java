@@ -0,0 +1,219 @@
+package app.services;
+
+import app.dao.CandidateListener;
+import app.entities.Candidate;
+import app.entities.Skill;
+import app.entities.SkillCategory;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// inverted index from skill slug to a compressed bitmap of the ids of the candidates that have it, so skill queries
+// like "java and postgresql" are answered with bitmap and/or instead of sql joins. the same is kept per skill category.
+// it is kept up to date through the CandidateListener callbacks
+public class SkillMatchIndex implements CandidateListener {
+    private final Map<String, RoaringBitmap> candidatesBySlug = new HashMap<>();
+    private final Map<Integer, Set<String>> slugsByCandidate = new HashMap<>();
+    private final Map<String, SkillCategory> categoryBySlug = new HashMap<>();
+    private final EnumMap<SkillCategory, RoaringBitmap> candidatesByCategory = new EnumMap<>(SkillCategory.class);
+    // matching is far more common than writes, so readers don't block each other
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // replaces everything with the given candidate id -> lower case skill slugs map and skill slug -> category map
+    public void rebuild(Map<Integer, Set<String>> slugs, Map<String, SkillCategory> categories) {
+        lock.writeLock().lock();
+        try {
+            categoryBySlug.clear();
+            categories.forEach((slug, category) -> categoryBySlug.put(normalize(slug), category));
+            rebuild(slugs);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // same as above, keeping the skill categories we already know
+    public void rebuild(Map<Integer, Set<String>> slugs) {
+        lock.writeLock().lock();
+        try {
+            candidatesBySlug.clear();
+            slugsByCandidate.clear();
+            candidatesByCategory.clear();
+            slugs.forEach(this::put);
+            // turns long runs of ids into run containers, which is where most of the compression comes from
+            candidatesBySlug.values().forEach(RoaringBitmap::runOptimize);
+            candidatesByCategory.values().forEach(RoaringBitmap::runOptimize);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ids (ascending) of the candidates that have every skill in all and at least one skill in any.
+    // an empty list means no restriction, but at least one of them must be given
+    public RoaringBitmap match(Collection<String> all, Collection<String> any) {
+        if (all.isEmpty() && any.isEmpty()) {
+            throw new IllegalArgumentException("At least one skill is required");
+        }
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap result = null;
+            for (String slug : all) {
+                RoaringBitmap candidates = candidatesBySlug.get(normalize(slug));
+                if (candidates == null) {
+                    // nobody has this skill, so nobody has all of them
+                    return new RoaringBitmap();
+                }
+                result = result == null ? candidates.clone() : RoaringBitmap.and(result, candidates);
+            }
+
+            if (!any.isEmpty()) {
+                RoaringBitmap anyOf = new RoaringBitmap();
+                for (String slug : any) {
+                    RoaringBitmap candidates = candidatesBySlug.get(normalize(slug));
+                    if (candidates != null) {
+                        anyOf.or(candidates);
+                    }
+                }
+                result = result == null ? anyOf : RoaringBitmap.and(result, anyOf);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ids (ascending) of the candidates that have a skill in every one of the categories (all is true),
+    // or in at least one of them (all is false)
+    public RoaringBitmap matchCategories(Collection<SkillCategory> categories, boolean all) {
+        if (categories.isEmpty()) {
+            throw new IllegalArgumentException("At least one category is required");
+        }
+
+        lock.readLock().lock();
+        try {
+            List<RoaringBitmap> bitmaps = new ArrayList<>();
+            for (SkillCategory category : categories) {
+                RoaringBitmap candidates = candidatesByCategory.get(category);
+                if (candidates == null) {
+                    if (all) {
+                        return new RoaringBitmap();
+                    }
+                    continue;
+                }
+                bitmaps.add(candidates);
+            }
+            if (bitmaps.isEmpty()) {
+                return new RoaringBitmap();
+            }
+            if (bitmaps.size() == 1) {
+                return bitmaps.get(0).clone();
+            }
+            // the aggregations return a new bitmap, so the result is safe to use after the lock is released
+            return all ? FastAggregation.and(bitmaps.iterator()) : FastAggregation.or(bitmaps.iterator());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // a copy of the ids of the candidates with the given skill, empty if nobody has it
+    public RoaringBitmap candidatesWith(String slug) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap candidates = candidatesBySlug.get(normalize(slug));
+            return candidates == null ? new RoaringBitmap() : candidates.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void candidateSaved(Candidate candidate) {
+        Set<String> slugs = new HashSet<>();
+        for (Skill skill : candidate.getSkills()) {
+            slugs.add(normalize(skill.getSlug()));
+        }
+
+        lock.writeLock().lock();
+        try {
+            // the saved skills are entities, so this is also how we learn the category of skills added after startup
+            for (Skill skill : candidate.getSkills()) {
+                if (skill.getCategory() != null) {
+                    categoryBySlug.put(normalize(skill.getSlug()), skill.getCategory());
+                }
+            }
+            remove(candidate.getId());
+            put(candidate.getId(), slugs);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void candidateDeleted(int candidateId) {
+        lock.writeLock().lock();
+        try {
+            remove(candidateId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void candidatesReloaded(Map<Integer, Set<String>> slugsByCandidate) {
+        rebuild(slugsByCandidate);
+    }
+
+    // must be called while holding the write lock
+    private void put(int candidateId, Set<String> slugs) {
+        if (slugs.isEmpty()) {
+            return;
+        }
+        slugsByCandidate.put(candidateId, slugs);
+        for (String slug : slugs) {
+            candidatesBySlug.computeIfAbsent(slug, s -> new RoaringBitmap()).add(candidateId);
+            SkillCategory category = categoryBySlug.get(slug);
+            if (category != null) {
+                candidatesByCategory.computeIfAbsent(category, c -> new RoaringBitmap()).add(candidateId);
+            }
+        }
+    }
+
+    // must be called while holding the write lock
+    private void remove(int candidateId) {
+        Set<String> slugs = slugsByCandidate.remove(candidateId);
+        if (slugs == null) {
+            return;
+        }
+        for (String slug : slugs) {
+            RoaringBitmap candidates = candidatesBySlug.get(slug);
+            candidates.remove(candidateId);
+            if (candidates.isEmpty()) {
+                candidatesBySlug.remove(slug);
+            }
+            // every category the candidate is in comes from one of its skills, so removing it from all of them is enough
+            SkillCategory category = categoryBySlug.get(slug);
+            RoaringBitmap inCategory = category != null ? candidatesByCategory.get(category) : null;
+            if (inCategory != null) {
+                inCategory.remove(candidateId);
+                if (inCategory.isEmpty()) {
+                    candidatesByCategory.remove(category);
+                }
+            }
+        }
+    }
+
+    private static String normalize(String slug) {
+        return slug.trim().toLowerCase(Locale.ROOT);
+    }
+}
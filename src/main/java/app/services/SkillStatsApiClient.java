@@ -1,71 +1,300 @@
 package app.services;
 
-import app.dto.SkillDTO;
 import app.dto.external.SkillStatsDTO;
-import app.dto.external.SkillStatsResponseDTO;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import app.metrics.LatencyHistogram;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 public class SkillStatsApiClient {
-    private static final String BASE_URL = "https://apiprovider.cphbusinessapps.dk/api/v1/skills/stats";
+    public static final String DEFAULT_BASE_URL = "https://apiprovider.cphbusinessapps.dk/api/v1/skills/stats";
+    // keeping well below the ~2000 characters most servers and proxies accept
+    private static final int MAX_URL_LENGTH = 1800;
+    private static final int MAX_SLUGS_PER_REQUEST = 100;
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(2);
+    private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(5);
+    // parsers are made per response, the factory itself is thread safe
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private final String baseUrl;
     private final HttpClient client;
-    private final ObjectMapper objectMapper;
+    private final Duration requestTimeout;
+    private final CircuitBreaker circuitBreaker;
+    // reading a body blocks until the api has sent it, so that runs here and not on the http client's threads.
+    // virtual threads, since a parse mostly waits on the network
+    private final ExecutorService parseExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    // slugs that are on their way to the api right now, so concurrent callers can wait for them instead
+    private final ConcurrentHashMap<String, CompletableFuture<SkillStatsDTO>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalescedLookups = new LongAdder();
+    // requests to the api that failed, timed out or were turned away by the circuit breaker
+    private final LongAdder failedRequests = new LongAdder();
+    // time of every request that actually went to the api, failed or not
+    private final LatencyHistogram upstreamLatency = new LatencyHistogram();
 
     public SkillStatsApiClient() {
-        this.client = HttpClient.newHttpClient();
-        this.objectMapper = new ObjectMapper();
-        // need these modules to handle ZonedDateTime from the external api response
-        this.objectMapper.registerModule(new JavaTimeModule());
-        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this(DEFAULT_BASE_URL);
     }
 
-    // takes a set of skills and enriches them with popularity and salary data from external api
-    public Set<SkillDTO> enrichSkills(Set<SkillDTO> skills) {
-        if (skills.isEmpty()) {
-            return skills;
+    // the base url can point somewhere else, e.g. a stub server in tests
+    public SkillStatsApiClient(String baseUrl) {
+        this(baseUrl, DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, new CircuitBreaker("skill-stats", 5, 30_000));
+    }
+
+    // a hanging api must never hold our threads, so every request has a connect and a request timeout,
+    // and after a row of failures the circuit breaker stops calling it for a while
+    public SkillStatsApiClient(String baseUrl, Duration connectTimeout, Duration requestTimeout,
+                               CircuitBreaker circuitBreaker) {
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .build();
+        this.requestTimeout = requestTimeout;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    // number of slugs that were served by waiting on another caller's request
+    public long getCoalescedLookups() {
+        return coalescedLookups.sum();
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public long getFailedRequests() {
+        return failedRequests.sum();
+    }
+
+    public LatencyHistogram getUpstreamLatency() {
+        return upstreamLatency;
+    }
+
+    public Map<String, SkillStatsDTO> fetchStats(Collection<String> slugs) {
+        return fetchStatsAsync(slugs).join();
+    }
+
+    // returns stats keyed by lower case slug. slugs the api doesn't know are simply missing from the map.
+    // the slugs are split over as few requests as possible while keeping every url below MAX_URL_LENGTH, and the
+    // requests run in parallel. a slug that another caller is already fetching is waited for instead of asked for
+    // again, so overlapping fetches (a refresh that runs long into the next one, or a manual one) share requests
+    public CompletableFuture<Map<String, SkillStatsDTO>> fetchStatsAsync(Collection<String> slugs) {
+        Map<String, CompletableFuture<SkillStatsDTO>> owned = new LinkedHashMap<>();
+        Map<String, CompletableFuture<SkillStatsDTO>> pending = new HashMap<>();
+        for (String slug : normalize(slugs)) {
+            CompletableFuture<SkillStatsDTO> future = new CompletableFuture<>();
+            CompletableFuture<SkillStatsDTO> existing = inFlight.putIfAbsent(slug, future);
+            if (existing == null) {
+                owned.put(slug, future);
+                pending.put(slug, future);
+            } else {
+                pending.put(slug, existing);
+                coalescedLookups.increment();
+            }
         }
 
-        String slugs = skills.stream()
-                .map(SkillDTO::getSlug)
-                .collect(Collectors.joining(","));
+        for (List<String> batch : buildBatches(baseUrl, owned.keySet())) {
+            CompletableFuture<Map<String, SkillStatsDTO>> fetched;
+            try {
+                fetched = fetchBatchAsync(batch);
+            } catch (RuntimeException e) {
+                // a bad base url or a request the http client rejects throws right away. the owned futures must
+                // still be completed, or every later fetch of these slugs would wait on them forever
+                failedRequests.increment();
+                fetched = CompletableFuture.failedFuture(e);
+            }
+            fetched.whenComplete((stats, error) -> {
+                if (error != null) {
+                    // a failing batch only means those slugs are missing, the other batches are still used
+                    System.out.println("Failed to fetch skill stats: " + error.getMessage());
+                }
+                for (String slug : batch) {
+                    CompletableFuture<SkillStatsDTO> future = owned.get(slug);
+                    inFlight.remove(slug, future);
+                    future.complete(stats == null ? null : stats.get(slug));
+                }
+            });
+        }
+
+        return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture[0]))
+                .thenApply(done -> {
+                    Map<String, SkillStatsDTO> result = new HashMap<>();
+                    pending.forEach((slug, future) -> {
+                        SkillStatsDTO stats = future.join();
+                        if (stats != null) {
+                            result.put(slug, stats);
+                        }
+                    });
+                    return result;
+                });
+    }
+
+    private CompletableFuture<Map<String, SkillStatsDTO>> fetchBatchAsync(List<String> batch) {
+        if (!circuitBreaker.allowRequest()) {
+            failedRequests.increment();
+            return CompletableFuture.failedFuture(new IllegalStateException("Skill stats api circuit breaker is open"));
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(buildUrl(baseUrl, batch)))
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<InputStream>> sent = client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+        CompletableFuture<Map<String, SkillStatsDTO>> fetched = sent
+                .thenApplyAsync(response -> {
+                    try (InputStream body = response.body()) {
+                        if (response.statusCode() != 200) {
+                            throw new IllegalStateException("Skill stats api returned status " + response.statusCode());
+                        }
+                        return parseStats(body);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, parseExecutor)
+                // the request timeout only covers the wait for the headers, so the whole batch is bounded as well
+                .orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        return fetched.whenComplete((result, error) -> {
+            upstreamLatency.record(System.nanoTime() - start);
+            if (error == null) {
+                circuitBreaker.recordSuccess();
+            } else {
+                failedRequests.increment();
+                circuitBreaker.recordFailure();
+                // the timeout only fails the future, the parse can still be blocked on a body that stalled.
+                // closing the body wakes it up and drops the connection. cancel aborts a request whose
+                // headers haven't come yet, and does nothing once they have
+                sent.cancel(true);
+                sent.thenAccept(response -> closeQuietly(response.body()));
+            }
+        });
+    }
 
+    private static void closeQuietly(InputStream body) {
         try {
-            String url = BASE_URL + "?slugs=" + slugs;
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == 200) {
-                SkillStatsResponseDTO statsResponse = objectMapper.readValue(response.body(), SkillStatsResponseDTO.class);
-
-                // matching each skill with its stats from the api response
-                for (SkillDTO skill : skills) {
-                    for (SkillStatsDTO stats : statsResponse.getData()) {
-                        if (skill.getSlug().equalsIgnoreCase(stats.getSlug())) {
-                            skill.setPopularityScore(stats.getPopularityScore());
-                            skill.setAverageSalary(stats.getAverageSalary());
-                            break;
+            body.close();
+        } catch (IOException e) {
+            // the body is being thrown away, there is nothing left to do with it
+        }
+    }
+
+    // reads {"data": [{...}, ...]} token by token straight from the response stream, so the body is never held as a
+    // string and no tree is built. only the fields we use are kept, everything else is skipped.
+    // the result is keyed by lower case slug
+    static Map<String, SkillStatsDTO> parseStats(InputStream body) throws IOException {
+        Map<String, SkillStatsDTO> result = new HashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a json object from the skill stats api");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals("data") && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        SkillStatsDTO stats = parseEntry(parser);
+                        if (stats.getSlug() != null) {
+                            result.put(normalize(stats.getSlug()), stats);
                         }
                     }
+                } else {
+                    parser.skipChildren();
                 }
             }
-        } catch (Exception e) {
-            // if external api fails we just return skills without enrichment data
-            System.out.println("Failed to fetch skill stats: " + e.getMessage());
         }
+        return result;
+    }
+
+    // the parser is on the START_OBJECT of an entry, and is left on its END_OBJECT
+    private static SkillStatsDTO parseEntry(JsonParser parser) throws IOException {
+        SkillStatsDTO stats = new SkillStatsDTO();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "slug" -> stats.setSlug(parser.getText());
+                case "popularityScore" -> stats.setPopularityScore(parser.getValueAsInt());
+                case "averageSalary" -> stats.setAverageSalary(parser.getValueAsInt());
+                case "updatedAt" -> stats.setUpdatedAt(ZonedDateTime.parse(parser.getText()));
+                default -> parser.skipChildren();
+            }
+        }
+        return stats;
+    }
+
+    static List<List<String>> buildBatches(String baseUrl, Collection<String> slugs) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        int urlLength = baseUrl.length() + "?slugs=".length();
+
+        for (String slug : new LinkedHashSet<>(slugs)) {
+            int encodedLength = encode(slug).length();
+            boolean full = !batch.isEmpty()
+                    && (urlLength + 1 + encodedLength > MAX_URL_LENGTH || batch.size() >= MAX_SLUGS_PER_REQUEST);
+            if (full) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                urlLength = baseUrl.length() + "?slugs=".length();
+            }
+            urlLength += (batch.isEmpty() ? 0 : 1) + encodedLength;
+            batch.add(slug);
+        }
+
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    static String buildUrl(String baseUrl, List<String> batch) {
+        return baseUrl + "?slugs=" + batch.stream()
+                .map(SkillStatsApiClient::encode)
+                .collect(Collectors.joining(","));
+    }
+
+    private static String encode(String slug) {
+        return URLEncoder.encode(slug, StandardCharsets.UTF_8);
+    }
+
+    private static String normalize(String slug) {
+        return slug.toLowerCase(Locale.ROOT);
+    }
 
-        return skills;
+    private static Set<String> normalize(Collection<String> slugs) {
+        return slugs.stream()
+                .map(SkillStatsApiClient::normalize)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 }
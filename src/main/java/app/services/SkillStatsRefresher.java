@@ -0,0 +1,87 @@
+package app.services;
+
+import app.dao.ISkillDao;
+import app.dto.external.SkillStatsDTO;
+import app.entities.Skill;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// pulls popularity and salary for every skill from the stats api on a schedule and stores them on the skill table,
+// so requests read them from the database and never wait on the api. if the api is down the old values are kept:
+// the skill table is the last known good copy, and how old it is can be seen from getLastFullRefresh
+public class SkillStatsRefresher {
+    private final ISkillDao skillDAO;
+    private final SkillStatsApiClient skillStatsApiClient;
+    private final PopularityLeaderboard leaderboard;
+    private final CandidateVersionTracker versionTracker;
+    private final PeriodicTask task = new PeriodicTask("skill-stats-refresher",
+            () -> System.out.println("Skill stats refreshed, " + refresh() + " skills changed"));
+    // runs where at least one request to the api failed, so the skills in it kept their stored stats
+    private final LongAdder staleRefreshes = new LongAdder();
+    private volatile Instant lastFullRefresh;
+
+    public SkillStatsRefresher(ISkillDao skillDAO, SkillStatsApiClient skillStatsApiClient,
+                               PopularityLeaderboard leaderboard, CandidateVersionTracker versionTracker) {
+        this.skillDAO = skillDAO;
+        this.skillStatsApiClient = skillStatsApiClient;
+        this.leaderboard = leaderboard;
+        this.versionTracker = versionTracker;
+    }
+
+    // runs a refresh right away and then every interval, on a single background thread
+    public void start(long intervalMinutes) {
+        task.start(0, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    public void stop() {
+        task.stop();
+    }
+
+    // fetches stats for every skill (split into batches by the client) and saves the ones whose updatedAt moved.
+    // returns how many skills were changed
+    public int refresh() {
+        List<String> slugs = skillDAO.getAll().stream()
+                .map(Skill::getSlug)
+                .toList();
+        if (slugs.isEmpty()) {
+            return 0;
+        }
+
+        long failedBefore = skillStatsApiClient.getFailedRequests();
+        Map<String, SkillStatsDTO> stats = skillStatsApiClient.fetchStats(slugs);
+        // a failed batch just leaves its skills out of stats, so they keep the values already stored
+        if (skillStatsApiClient.getFailedRequests() == failedBefore) {
+            lastFullRefresh = Instant.now();
+        } else {
+            staleRefreshes.increment();
+        }
+        Map<String, SkillStatsDTO> changed = skillDAO.updateStats(stats);
+        if (changed.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, Integer> popularity = new HashMap<>();
+        changed.forEach((slug, dto) -> {
+            if (dto.getPopularityScore() != null) {
+                popularity.put(slug, dto.getPopularityScore());
+            }
+        });
+        leaderboard.updatePopularity(popularity);
+        versionTracker.skillStatsChanged();
+        return changed.size();
+    }
+
+    // when every skill was last refreshed from the api, null if that hasn't happened since startup
+    public Instant getLastFullRefresh() {
+        return lastFullRefresh;
+    }
+
+    public long getStaleRefreshes() {
+        return staleRefreshes.sum();
+    }
+}
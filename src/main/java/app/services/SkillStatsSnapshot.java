@@ -0,0 +1,153 @@
+package app.services;
+
+import app.dao.ISkillDao;
+import app.dto.external.SkillStatsDTO;
+import app.entities.Skill;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// writes the stats stored on the skill table to a small binary file now and then, and copies them back onto the
+// skills at startup, before the leaderboard is built and the server takes requests. the schema is created fresh on
+// every start, so without this a restarted server has no popularity or salary until the first refresh is through.
+// the refresher then only writes the skills whose updatedAt moved since the snapshot.
+//
+// format: magic, version, entry count, then per entry the slug, a flags byte saying which of the fields are there,
+// popularity, salary and updatedAt (epoch millis). only skills that have stats are stored
+public class SkillStatsSnapshot {
+    private static final int MAGIC = 0x534B5353; // "SKSS"
+    private static final short VERSION = 1;
+    private static final int HAS_POPULARITY = 1;
+    private static final int HAS_SALARY = 2;
+    private static final int HAS_UPDATED_AT = 4;
+
+    private final Path file;
+    private final ISkillDao skillDAO;
+    private final PeriodicTask task;
+    private Thread shutdownHook;
+
+    public SkillStatsSnapshot(Path file, ISkillDao skillDAO) {
+        this.file = file;
+        this.skillDAO = skillDAO;
+        this.task = new PeriodicTask("skill-stats-snapshot", () -> {
+            try {
+                save();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // returns the number of skills that got their stats from the snapshot. a missing or broken file just means
+    // a cold start, and slugs that are no longer in the skill table are ignored
+    public int load() {
+        Map<String, SkillStatsDTO> stats = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                System.out.println("Ignoring skill stats snapshot " + file + ", unknown format");
+                return 0;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String slug = in.readUTF();
+                int flags = in.readByte();
+                int popularity = in.readInt();
+                int salary = in.readInt();
+                long updatedAt = in.readLong();
+
+                SkillStatsDTO entry = new SkillStatsDTO();
+                entry.setSlug(slug);
+                entry.setPopularityScore((flags & HAS_POPULARITY) != 0 ? popularity : null);
+                entry.setAverageSalary((flags & HAS_SALARY) != 0 ? salary : null);
+                entry.setUpdatedAt((flags & HAS_UPDATED_AT) != 0
+                        ? ZonedDateTime.ofInstant(Instant.ofEpochMilli(updatedAt), ZoneOffset.UTC) : null);
+                stats.put(slug, entry);
+            }
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            System.out.println("Failed to load skill stats snapshot " + file + ": " + e.getMessage());
+            return 0;
+        }
+        return skillDAO.updateStats(stats).size();
+    }
+
+    // writes to a temp file first and moves it in place, so a crash halfway never leaves a broken snapshot.
+    // returns the number of skills written
+    public int save() throws IOException {
+        List<Skill> skills = skillDAO.getAll().stream()
+                .filter(skill -> skill.getPopularityScore() != null || skill.getAverageSalary() != null
+                        || skill.getStatsUpdatedAt() != null)
+                .toList();
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(skills.size());
+            for (Skill skill : skills) {
+                int flags = (skill.getPopularityScore() != null ? HAS_POPULARITY : 0)
+                        | (skill.getAverageSalary() != null ? HAS_SALARY : 0)
+                        | (skill.getStatsUpdatedAt() != null ? HAS_UPDATED_AT : 0);
+                out.writeUTF(skill.getSlug().toLowerCase(Locale.ROOT));
+                out.writeByte(flags);
+                out.writeInt((flags & HAS_POPULARITY) != 0 ? skill.getPopularityScore() : 0);
+                out.writeInt((flags & HAS_SALARY) != 0 ? skill.getAverageSalary() : 0);
+                out.writeLong((flags & HAS_UPDATED_AT) != 0 ? skill.getStatsUpdatedAt().toEpochMilli() : 0);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return skills.size();
+    }
+
+    // saves every interval on a background thread, and once more when the jvm shuts down
+    public synchronized void start(long intervalMinutes) {
+        if (shutdownHook != null) {
+            return;
+        }
+        task.start(intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        shutdownHook = new Thread(task::runQuietly, "skill-stats-snapshot-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    // a stopped snapshot isn't written at shutdown either
+    public synchronized void stop() {
+        if (shutdownHook == null) {
+            return;
+        }
+        task.stop();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // the jvm is already shutting down, and the hook is running or about to
+        }
+        shutdownHook = null;
+    }
+}
@@ -0,0 +1,95 @@
+package app.services;
+
+// keeps the k best (id, score) pairs seen so far in a min heap over two primitive arrays, so the worst of the kept
+// pairs is always at the root and can be replaced in O(log k). higher score is better, on ties the lower id wins
+final class TopK {
+    private final int k;
+    private final int[] ids;
+    private final double[] scores;
+    private int size;
+
+    TopK(int k) {
+        this.k = k;
+        this.ids = new int[k];
+        this.scores = new double[k];
+    }
+
+    void offer(int id, double score) {
+        if (size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (k > 0 && isWorse(ids[0], scores[0], id, score)) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    TopK merge(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+        return this;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // empties the heap, filling the arrays best first
+    void drainSorted(int[] idsOut, double[] scoresOut) {
+        for (int i = size - 1; i >= 0; i--) {
+            idsOut[i] = ids[0];
+            scoresOut[i] = scores[0];
+            size--;
+            ids[0] = ids[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+    }
+
+    // true if (idA, scoreA) ranks below (idB, scoreB)
+    private static boolean isWorse(int idA, double scoreA, int idB, double scoreB) {
+        return scoreA < scoreB || (scoreA == scoreB && idA > idB);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!isWorse(ids[i], scores[i], ids[parent], scores[parent])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            int right = left + 1;
+            int worst = i;
+            if (left < size && isWorse(ids[left], scores[left], ids[worst], scores[worst])) {
+                worst = left;
+            }
+            if (right < size && isWorse(ids[right], scores[right], ids[worst], scores[worst])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
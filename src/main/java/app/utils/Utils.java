@@ -23,4 +23,42 @@ public class Utils {
             throw new ApiException(500, String.format("Could not read property %s.", propName));
         }
     }
-}
\ No newline at end of file
+
+    // same as above, but for optional properties: returns the default if the file or the property is missing
+    public static String getPropertyValue(String propName, String resourceName, String defaultValue) {
+        try (InputStream is = Utils.class.getClassLoader().getResourceAsStream(resourceName)) {
+            if (is == null) {
+                return defaultValue;
+            }
+            Properties prop = new Properties();
+            prop.load(is);
+
+            String value = prop.getProperty(propName);
+            return value != null ? value.trim() : defaultValue;
+        } catch (IOException ex) {
+            return defaultValue;
+        }
+    }
+
+    // reads an optional setting from the environment, falling back to the default when it isn't set
+    public static String getEnv(String name, String defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    public static int getEnvInt(String name, int defaultValue) {
+        String value = getEnv(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.out.println("WARNING: " + name + " is not a number, using default " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -1,15 +1,35 @@
 package app;
 
 import app.dto.CandidateDTO;
+import app.dto.CandidateImportDTO;
+import app.dto.SkillAssignmentDTO;
 import app.dto.UserDTO;
 import io.restassured.http.ContentType;
+import io.restassured.response.Response;
 import org.junit.jupiter.api.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 class CandidateControllerTest extends IntegrationTestBase {
 
+    // postgresql is left without popularity, so it doesn't count in candidate 3's average
+    @Override
+    protected Map<String, Integer> seededPopularity() {
+        return Map.of("java", 90, "python", 70, "spring-boot", 60);
+    }
+
     @BeforeAll
     void setUp() {
         setupTest(7777);
@@ -62,6 +82,34 @@ class CandidateControllerTest extends IntegrationTestBase {
                 .body("[0].name", notNullValue());
     }
 
+    @Test
+    @DisplayName("Test get candidates one page at a time")
+    void testGetCandidatesPaged() {
+        String nextAfter = given()
+                .header("Authorization", "Bearer " + userToken)
+                .queryParam("limit", 1)
+                .when()
+                .get("/candidates")
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(1))
+                .header("X-Next-After", notNullValue())
+                .extract()
+                .header("X-Next-After");
+
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .queryParam("after", nextAfter)
+                .queryParam("limit", 1000)
+                .when()
+                .get("/candidates")
+                .then()
+                .statusCode(200)
+                .body("size()", greaterThan(0))
+                .body("id", everyItem(greaterThan(Integer.parseInt(nextAfter))))
+                .header("X-Next-After", nullValue());
+    }
+
     @Test
     @DisplayName("Test get all candidates without authentication")
     void testGetAllCandidatesUnauthorized() {
@@ -86,9 +134,168 @@ class CandidateControllerTest extends IntegrationTestBase {
     }
 
     @Test
-    @DisplayName("Test get candidate by ID - external API will be called")
+    @DisplayName("Test match candidates by skills")
+    void testMatchCandidates() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .queryParam("all", "java,spring-boot")
+                .when()
+                .get("/candidates/match")
+                .then()
+                .statusCode(200)
+                .header("X-Total-Count", notNullValue())
+                .body("id", hasItem(1))
+                .body("id", not(hasItem(2)));
+
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .queryParam("all", "java,cobol")
+                .when()
+                .get("/candidates/match")
+                .then()
+                .statusCode(200)
+                .header("X-Total-Count", equalTo("0"))
+                .body("size()", equalTo(0));
+    }
+
+    @Test
+    @DisplayName("Test match candidates without skills")
+    void testMatchCandidatesWithoutSkills() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .when()
+                .get("/candidates/match")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    @DisplayName("Test get candidates by several categories")
+    void testGetCandidatesByCategories() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .queryParam("category", "PROG_LANG,FRAMEWORK")
+                .queryParam("mode", "all")
+                .when()
+                .get("/candidates")
+                .then()
+                .statusCode(200)
+                .body("id", hasItem(1))
+                .body("id", not(hasItem(2)));
+
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .queryParam("category", "FRAMEWORK,PROG_LANG")
+                .queryParam("mode", "any")
+                .queryParam("limit", 1)
+                .when()
+                .get("/candidates")
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(1))
+                .header("X-Next-After", notNullValue());
+    }
+
+    @Test
+    @DisplayName("Test get candidates with an invalid category mode")
+    void testGetCandidatesByCategoriesInvalidMode() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .queryParam("category", "DB")
+                .queryParam("mode", "some")
+                .when()
+                .get("/candidates")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    @DisplayName("Test get candidate by ID")
     void testGetCandidateById() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .when()
+                .get("/candidates/2")
+                .then()
+                .statusCode(200)
+                .body("name", equalTo("Maria Hansen"))
+                .body("skills.size()", greaterThan(0));
+    }
+
+    @Test
+    @DisplayName("Test get candidate by ID with If-None-Match gives 304 while unchanged")
+    void testGetCandidateByIdNotModified() {
+        String etag = given()
+                .header("Authorization", "Bearer " + userToken)
+                .when()
+                .get("/candidates/2")
+                .then()
+                .statusCode(200)
+                .header("ETag", notNullValue())
+                .header("Last-Modified", notNullValue())
+                .extract()
+                .header("ETag");
 
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .header("If-None-Match", etag)
+                .when()
+                .get("/candidates/2")
+                .then()
+                .statusCode(304)
+                .header("ETag", equalTo(etag));
+    }
+
+    @Test
+    @DisplayName("Test the candidate list etag changes when a candidate is created")
+    void testGetAllCandidatesNotModified() {
+        String etag = given()
+                .header("Authorization", "Bearer " + userToken)
+                .when()
+                .get("/candidates")
+                .then()
+                .statusCode(200)
+                .extract()
+                .header("ETag");
+
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .header("If-None-Match", etag)
+                .queryParam("limit", 1)
+                .when()
+                .get("/candidates")
+                .then()
+                .statusCode(304);
+
+        // a bad parameter is still a bad request, even with a matching etag
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .header("If-None-Match", etag)
+                .queryParam("category", "NOPE")
+                .when()
+                .get("/candidates")
+                .then()
+                .statusCode(400);
+
+        CandidateDTO newCandidate = new CandidateDTO();
+        newCandidate.setName("Etag Candidate");
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .contentType(ContentType.JSON)
+                .body(newCandidate)
+                .when()
+                .post("/candidates")
+                .then()
+                .statusCode(201);
+
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .header("If-None-Match", etag)
+                .when()
+                .get("/candidates")
+                .then()
+                .statusCode(200)
+                .header("ETag", not(equalTo(etag)));
     }
 
     @Test
@@ -133,6 +340,61 @@ class CandidateControllerTest extends IntegrationTestBase {
                 .body("message", notNullValue());
     }
 
+    @Test
+    @DisplayName("Test bulk create reports a result for every item")
+    void testCreateCandidatesBulk() {
+        List<CandidateImportDTO> candidates = List.of(
+                new CandidateImportDTO("Bulk One", "+45 10 10 10 10", "Datamatiker", Set.of("java", "postgresql")),
+                new CandidateImportDTO(null, null, null, Set.of()),
+                new CandidateImportDTO("Bulk Three", null, null, Set.of("cobol")),
+                new CandidateImportDTO("Bulk Four", null, null, Set.of("PYTHON")));
+
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .contentType(ContentType.JSON)
+                .body(candidates)
+                .when()
+                .post("/candidates/bulk")
+                .then()
+                .statusCode(201)
+                .body("created", equalTo(2))
+                .body("failed", equalTo(2))
+                .body("results[0].id", notNullValue())
+                .body("results[1].error", containsString("name"))
+                .body("results[2].error", containsString("cobol"))
+                .body("results[3].index", equalTo(3))
+                .body("results[3].id", notNullValue());
+    }
+
+    @Test
+    @DisplayName("Test bulk create reports a missing skill slug on its item")
+    void testCreateCandidatesBulkNullSlug() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .contentType(ContentType.JSON)
+                .body("[{\"name\":\"x\",\"skills\":[null]},{\"name\":\"y\",\"skills\":[\" \"]}]")
+                .when()
+                .post("/candidates/bulk")
+                .then()
+                .statusCode(400)
+                .body("created", equalTo(0))
+                .body("results[0].error", equalTo("Skill slug is required"))
+                .body("results[1].error", equalTo("Skill slug is required"));
+    }
+
+    @Test
+    @DisplayName("Test csv import is refused on databases other than postgres")
+    void testImportCandidatesRequiresPostgres() {
+        given()
+                .header("Authorization", "Bearer " + adminToken)
+                .contentType("text/csv")
+                .body("name,phone,education,skills\nCsv One,,,java\n")
+                .when()
+                .post("/candidates/import")
+                .then()
+                .statusCode(501);
+    }
+
     @Test
     @DisplayName("Test update candidate")
     void testUpdateCandidate() {
@@ -181,8 +443,210 @@ class CandidateControllerTest extends IntegrationTestBase {
     }
 
     @Test
-    @DisplayName("Test get top candidate by popularity - calls real external API")
+    @DisplayName("Test add several skills by id and slug in one request")
+    void testAddSkillsToCandidate() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .contentType(ContentType.JSON)
+                .body(new SkillAssignmentDTO(Set.of(3), Set.of("PostgreSQL")))
+                .when()
+                .put("/candidates/1/skills")
+                .then()
+                .statusCode(200)
+                .body("skills.slug", hasItems("spring-boot", "postgresql", "java"));
+    }
+
+    @Test
+    @DisplayName("Test concurrent skill adds on one candidate either succeed or conflict")
+    void testConcurrentAddSkills() throws Exception {
+        CandidateDTO newCandidate = new CandidateDTO();
+        newCandidate.setName("Busy Candidate");
+        int candidateId = given()
+                .header("Authorization", "Bearer " + userToken)
+                .contentType(ContentType.JSON)
+                .body(newCandidate)
+                .when()
+                .post("/candidates")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Response>> responses = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                responses.add(executor.submit(() -> given()
+                        .header("Authorization", "Bearer " + userToken)
+                        .contentType(ContentType.JSON)
+                        .body(new SkillAssignmentDTO(Set.of(3, 4), Set.of()))
+                        .when()
+                        .put("/candidates/" + candidateId + "/skills")));
+            }
+            for (Future<Response> response : responses) {
+                Response result = response.get(10, TimeUnit.SECONDS);
+                assertThat(result.statusCode(), anyOf(equalTo(200), equalTo(409)));
+                if (result.statusCode() == 409) {
+                    assertThat(result.jsonPath().getString("message"), containsString("changed by someone else"));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .when()
+                .get("/candidates/" + candidateId)
+                .then()
+                .statusCode(200)
+                .body("skills.id", hasItems(3, 4));
+    }
+
+    @Test
+    @DisplayName("Test add unknown skills is rejected")
+    void testAddSkillsToCandidateUnknownSkill() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .contentType(ContentType.JSON)
+                .body(new SkillAssignmentDTO(Set.of(999), Set.of()))
+                .when()
+                .put("/candidates/1/skills")
+                .then()
+                .statusCode(400)
+                .body("message", containsString("999"));
+    }
+
+    // the report tests run first, before other tests change the candidates' skills
+    @Test
+    @Order(1)
+    @DisplayName("Test get top candidate by popularity from the leaderboard")
     void testGetTopCandidateByPopularity() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .when()
+                .get("/reports/candidates/top-by-popularity")
+                .then()
+                .statusCode(200)
+                .body("candidateId", equalTo(3))
+                .body("averagePopularityScore", equalTo(90.0f));
+    }
 
+    @Test
+    @Order(1)
+    @DisplayName("Test leaderboard returns the top candidates by average popularity")
+    void testGetLeaderboard() {
+        // candidate 3 averages 90 (java), candidate 1 75 (java, spring-boot) and candidate 2 70 (python)
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .queryParam("limit", 2)
+                .when()
+                .get("/reports/candidates/leaderboard")
+                .then()
+                .statusCode(200)
+                .body("candidateId", contains(3, 1))
+                .body("averagePopularityScore", contains(90.0f, 75.0f));
+    }
+
+    @Test
+    @DisplayName("Test leaderboard with invalid limit")
+    void testGetLeaderboardInvalidLimit() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .queryParam("limit", "abc")
+                .when()
+                .get("/reports/candidates/leaderboard")
+                .then()
+                .statusCode(400);
+
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .queryParam("limit", 2_000_000_000)
+                .when()
+                .get("/reports/candidates/leaderboard")
+                .then()
+                .statusCode(400)
+                .body("message", containsString("1000"));
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Test ranked candidates by required and preferred skills")
+    void testGetRankedCandidates() {
+        // only candidates 1 and 3 have java. spring-boot (popularity 60) counts more for candidate 1
+        // than postgresql (no popularity, weight 0.5) does for candidate 3
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .queryParam("required", "java:2")
+                .queryParam("preferred", "spring-boot,postgresql:0.5")
+                .queryParam("limit", 2)
+                .when()
+                .get("/reports/candidates/ranked")
+                .then()
+                .statusCode(200)
+                .body("candidateId", contains(1, 3))
+                .body("matchedSkills[0]", contains("java", "spring-boot"))
+                .body("matchedSkills[1]", contains("java", "postgresql"));
+    }
+
+    @Test
+    @DisplayName("Test ranked candidates with an invalid weight")
+    void testGetRankedCandidatesInvalidWeight() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .queryParam("required", "java:-1")
+                .when()
+                .get("/reports/candidates/ranked")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    @DisplayName("Test connection pool stats as admin")
+    void testGetConnectionPoolStats() {
+        given()
+                .header("Authorization", "Bearer " + adminToken)
+                .when()
+                .get("/stats/connection-pool")
+                .then()
+                .statusCode(200)
+                .body("maxPoolSize", equalTo(5))
+                .body("total", greaterThan(0));
+    }
+
+    @Test
+    @DisplayName("Test metrics in prometheus format with route, dao and jvm metrics")
+    void testGetMetrics() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .when()
+                .get("/candidates/2")
+                .then()
+                .statusCode(200);
+        given()
+                .when()
+                .get("/candidates/2")
+                .then()
+                .statusCode(401);
+        given()
+                .when()
+                .get("/does-not-exist/42")
+                .then()
+                .statusCode(404);
+
+        given()
+                .when()
+                .get("http://localhost:" + testPort + "/metrics")
+                .then()
+                .statusCode(200)
+                .contentType(containsString("text/plain"))
+                .body(containsString("# TYPE http_request_duration_seconds histogram"))
+                .body(containsString("http_request_duration_seconds_count{method=\"GET\",route=\"/api/candidates/{id}\",status=\"200\"}"))
+                .body(containsString("http_request_duration_seconds_count{method=\"GET\",route=\"/api/candidates/{id}\",status=\"401\"}"))
+                .body(containsString("http_request_duration_seconds_count{method=\"GET\",route=\"unmatched\",status=\"404\"}"))
+                .body(containsString("dao_call_duration_seconds_bucket{dao=\"candidate\",method=\"getById\",le=\"+Inf\"}"))
+                .body(containsString("http_requests_in_flight 1.0"))
+                .body(containsString("skill_stats_circuit_breaker_state{state=\"closed\"} 1.0"))
+                .body(containsString("jvm_threads_live"));
     }
 }
@@ -2,17 +2,28 @@ package app;
 
 import app.config.HibernateConfig;
 import app.controllers.CandidateController;
+import app.controllers.MetricsController;
 import app.controllers.ReportController;
 import app.controllers.SecurityController;
+import app.controllers.StatsController;
 import app.dao.CandidateDAO;
+import app.dao.ICandidateDao;
 import app.dao.SkillDAO;
 import app.dao.UserDAO;
 import app.dto.TokenDTO;
 import app.dto.UserDTO;
+import app.metrics.MetricsRegistry;
+import app.metrics.TimedProxy;
 import app.routes.Routes;
 import app.security.JwtUtil;
+import app.security.PasswordHasher;
 import app.security.Roles;
+import app.services.CandidateRanker;
+import app.services.CandidateVersionTracker;
+import app.services.PopularityLeaderboard;
+import app.services.SkillMatchIndex;
 import app.services.SkillStatsApiClient;
+import app.services.SkillStatsRefresher;
 import app.entities.User;
 import app.entities.Candidate;
 import app.entities.Skill;
@@ -29,6 +40,9 @@ import jakarta.persistence.EntityManagerFactory;
 import org.junit.jupiter.api.*;
 
 import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static io.restassured.RestAssured.given;
 
@@ -43,6 +57,11 @@ public class IntegrationTestBase {
     protected int testPort;
 
     protected void setupTest(int port) {
+        setupTest(port, false);
+    }
+
+    // same switch as VIRTUAL_THREADS in ApplicationConfig
+    protected void setupTest(int port, boolean useVirtualThreads) {
         this.testPort = port;
         RestAssured.baseURI = "http://localhost:" + port + "/api";
 
@@ -56,21 +75,42 @@ public class IntegrationTestBase {
 
         SkillStatsApiClient skillStatsApiClient = new SkillStatsApiClient();
         JwtUtil jwtUtil = new JwtUtil(SECRET_KEY);
-
-        CandidateController candidateController = new CandidateController(candidateDAO, skillStatsApiClient);
-        ReportController reportController = new ReportController(candidateDAO, skillStatsApiClient);
-        SecurityController securityController = new SecurityController(userDAO, jwtUtil);
+        PasswordHasher passwordHasher = new PasswordHasher(4, 2, 50);
+
+        Map<Integer, Set<String>> skillSlugs = candidateDAO.getSkillSlugsByCandidate();
+        PopularityLeaderboard leaderboard = new PopularityLeaderboard();
+        leaderboard.rebuild(skillSlugs, skillDAO.getPopularityBySlug());
+        candidateDAO.addListener(leaderboard);
+        SkillMatchIndex skillMatchIndex = new SkillMatchIndex();
+        skillMatchIndex.rebuild(skillSlugs, skillDAO.getCategoriesBySlug());
+        candidateDAO.addListener(skillMatchIndex);
+        CandidateVersionTracker versionTracker = new CandidateVersionTracker();
+        candidateDAO.addListener(versionTracker);
+
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        ICandidateDao timedCandidateDAO = TimedProxy.wrap(ICandidateDao.class, candidateDAO, metricsRegistry, "candidate");
+
+        CandidateController candidateController = new CandidateController(timedCandidateDAO, skillDAO, skillMatchIndex, versionTracker);
+        ReportController reportController = new ReportController(leaderboard, new CandidateRanker(skillMatchIndex, skillDAO));
+        SecurityController securityController = new SecurityController(userDAO, jwtUtil, passwordHasher);
+        // never started here, tests that need a refresh make their own refresher against a stub api
+        SkillStatsRefresher skillStatsRefresher = new SkillStatsRefresher(skillDAO, skillStatsApiClient, leaderboard, versionTracker);
+
+        StatsController statsController = new StatsController(emf, skillStatsApiClient, skillStatsRefresher);
+        MetricsController metricsController = new MetricsController(metricsRegistry, skillStatsApiClient, skillStatsRefresher);
 
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
 
         app = Javalin.create(config -> {
+            config.useVirtualThreads = useVirtualThreads;
             config.http.defaultContentType = "application/json";
             config.jsonMapper(new JavalinJackson(objectMapper, true));
+            config.requestLogger.http(metricsController::requestDone);
         }).start(port);
 
-        Routes.configureRoutes(app, candidateController, reportController, securityController, jwtUtil);
+        Routes.configureRoutes(app, candidateController, reportController, securityController, statsController, metricsController, jwtUtil);
 
         app.exception(app.exceptions.ApiException.class, (e, ctx) -> {
             ctx.status(e.getCode()).json(java.util.Map.of("code", e.getCode(), "message", e.getMessage()));
@@ -99,6 +139,17 @@ public class IntegrationTestBase {
         props.put("hibernate.show_sql", "false");
         props.put("hibernate.format_sql", "false");
         props.put("hibernate.current_session_context_class", "thread");
+        props.put("hibernate.session_factory.statement_inspector", "app.dao.StatementCounter");
+        props.put("hibernate.cache.use_second_level_cache", "true");
+        props.put("hibernate.cache.region.factory_class", "jcache");
+        props.put("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+        props.put("hibernate.javax.cache.missing_cache_strategy", "create");
+        props.put("hibernate.generate_statistics", "true");
+        props.put("hibernate.jdbc.batch_size", "50");
+        props.put("hibernate.order_inserts", "true");
+        props.put("hibernate.order_updates", "true");
+        props.put("hibernate.connection.provider_class", "org.hibernate.hikaricp.internal.HikariCPConnectionProvider");
+        props.put("hibernate.hikari.maximumPoolSize", "5");
 
         configuration.setProperties(props);
 
@@ -116,6 +167,11 @@ public class IntegrationTestBase {
                 .unwrap(EntityManagerFactory.class);
     }
 
+    // popularity by skill slug for the seeded skills, none by default so the skills start without stats
+    protected Map<String, Integer> seededPopularity() {
+        return Map.of();
+    }
+
     private void populateTestData() {
         try (EntityManager em = emf.createEntityManager()) {
             em.getTransaction().begin();
@@ -142,6 +198,10 @@ public class IntegrationTestBase {
             Skill postgresql = new Skill("PostgreSQL", "postgresql", SkillCategory.DB, "Database");
             em.persist(postgresql);
 
+            for (Skill skill : List.of(java, python, springBoot, postgresql)) {
+                skill.setPopularityScore(seededPopularity().get(skill.getSlug()));
+            }
+
             Candidate candidate1 = new Candidate("John Nielsen", "+45 12 34 56 78", "Computer Science BSc");
             candidate1.addSkill(java);
             candidate1.addSkill(springBoot);
@@ -0,0 +1,63 @@
+package app;
+
+import app.routes.Routes;
+import org.junit.jupiter.api.*;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+
+// the app with VIRTUAL_THREADS=true, checking that requests really run on virtual threads
+// and that logins, database reads and the stream endpoint still work there
+class VirtualThreadsSmokeTest extends IntegrationTestBase {
+
+    @BeforeAll
+    void setUp() {
+        setupTest(7780, true);
+        app.get("/api/thread", ctx -> ctx.result(String.valueOf(Thread.currentThread().isVirtual())), Routes.Role.ANYONE);
+    }
+
+    @AfterAll
+    void tearDown() {
+        teardownTest();
+    }
+
+    @Test
+    @DisplayName("Requests are handled on virtual threads")
+    void testRequestsRunOnVirtualThreads() {
+        given()
+                .when()
+                .get("/thread")
+                .then()
+                .statusCode(200)
+                .body(equalTo("true"));
+    }
+
+    @Test
+    @DisplayName("Login, candidate reads and the candidate stream work on virtual threads")
+    void testEndpoints() {
+        // the tokens were made by logging in during setup, so the bcrypt pool works from a virtual thread too
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .when()
+                .get("/candidates")
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(3));
+
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .when()
+                .get("/candidates/1")
+                .then()
+                .statusCode(200)
+                .body("name", equalTo("John Nielsen"));
+
+        given()
+                .header("Authorization", "Bearer " + adminToken)
+                .when()
+                .get("/stats/connection-pool")
+                .then()
+                .statusCode(200)
+                .body("maxPoolSize", equalTo(5));
+    }
+}
@@ -0,0 +1,130 @@
+package app.dao;
+
+import app.dto.ImportResultDTO;
+import app.entities.Candidate;
+import app.entities.Skill;
+import app.entities.SkillCategory;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// the import uses postgres COPY, so it runs against a real postgres. skipped where docker isn't available
+@Testcontainers(disabledWithoutDocker = true)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CandidateCsvImportTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private EntityManagerFactory emf;
+    private CandidateDAO candidateDAO;
+
+    @BeforeAll
+    void setUp() {
+        org.hibernate.cfg.Configuration configuration = new org.hibernate.cfg.Configuration();
+        java.util.Properties props = new java.util.Properties();
+        props.put("hibernate.connection.driver_class", "org.postgresql.Driver");
+        props.put("hibernate.connection.url", POSTGRES.getJdbcUrl());
+        props.put("hibernate.connection.username", POSTGRES.getUsername());
+        props.put("hibernate.connection.password", POSTGRES.getPassword());
+        props.put("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        props.put("hibernate.hbm2ddl.auto", "create-drop");
+        props.put("hibernate.jdbc.batch_size", "50");
+        props.put("hibernate.order_inserts", "true");
+        configuration.setProperties(props);
+        configuration.addAnnotatedClass(Candidate.class);
+        configuration.addAnnotatedClass(Skill.class);
+        configuration.addAnnotatedClass(app.entities.User.class);
+
+        emf = configuration.buildSessionFactory(new org.hibernate.boot.registry.StandardServiceRegistryBuilder()
+                        .applySettings(configuration.getProperties())
+                        .build())
+                .unwrap(EntityManagerFactory.class);
+        candidateDAO = new CandidateDAO(emf);
+
+        try (EntityManager em = emf.createEntityManager()) {
+            em.getTransaction().begin();
+            em.persist(new Skill("Java", "java", SkillCategory.PROG_LANG, "Programming language"));
+            em.persist(new Skill("Python", "python", SkillCategory.PROG_LANG, "Programming language"));
+            em.getTransaction().commit();
+        }
+    }
+
+    @AfterAll
+    void tearDown() {
+        if (emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Import drops nameless rows, links known skills and reports unknown ones")
+    void testImportCsv() {
+        candidateDAO.create(new Candidate("Before Import", null, null));
+
+        String csv = """
+                name,phone,education,skills
+                Csv One,+45 11 11 11 11,Datamatiker,java;PYTHON
+                ,,,java
+                "  ",,,python
+                Csv Two,,,java; cobol
+                """;
+        ImportResultDTO result = candidateDAO.importCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(4, result.getRows());
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getSkipped());
+        assertEquals(3, result.getSkillLinks());
+        assertEquals(List.of("cobol"), result.getUnknownSkills());
+
+        Map<Integer, Set<String>> slugs = candidateDAO.getSkillSlugsByCandidate();
+        List<Candidate> imported = candidateDAO.getAll().stream()
+                .filter(c -> c.getName().startsWith("Csv "))
+                .toList();
+        assertEquals(2, imported.size());
+        Candidate csvOne = imported.stream().filter(c -> c.getName().equals("Csv One")).findFirst().orElseThrow();
+        assertEquals(Set.of("java", "python"), slugs.get(csvOne.getId()));
+        assertEquals(0, csvOne.getVersion());
+        assertNotNull(csvOne.getLastModified());
+    }
+
+    @Test
+    @DisplayName("Imported ids come in blocks from the sequence and never collide with hibernate's")
+    void testImportedIdsDontCollide() {
+        // hibernate takes a block of ids, the import takes the next ones, and hibernate's next block comes after
+        Candidate first = candidateDAO.create(new Candidate("Hibernate First", null, null));
+
+        StringBuilder csv = new StringBuilder("name,phone,education,skills\n");
+        for (int i = 0; i < 120; i++) {
+            csv.append("Block ").append(i).append(",,,java\n");
+        }
+        ImportResultDTO result = candidateDAO.importCsv(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(120, result.getImported());
+
+        // enough to use up what is left of hibernate's block and take new ones
+        List<Candidate> more = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            more.add(new Candidate("Hibernate " + i, null, null));
+        }
+        candidateDAO.createAll(more);
+
+        List<Candidate> all = candidateDAO.getAll();
+        Set<Integer> ids = new HashSet<>();
+        all.forEach(c -> assertTrue(ids.add(c.getId()), "duplicate id " + c.getId()));
+        assertTrue(ids.contains(first.getId()));
+        more.forEach(c -> assertTrue(ids.contains(c.getId())));
+    }
+}
@@ -0,0 +1,152 @@
+package app.dao;
+
+import app.IntegrationTestBase;
+import app.dto.CandidateDTO;
+import app.entities.Candidate;
+import app.entities.Skill;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandidateDAOTest extends IntegrationTestBase {
+
+    private CandidateDAO candidateDAO;
+
+    @BeforeAll
+    void setUp() {
+        setupTest(7778);
+        candidateDAO = new CandidateDAO(emf);
+    }
+
+    @AfterAll
+    void tearDown() {
+        teardownTest();
+    }
+
+    @Test
+    @DisplayName("Get all loads candidates and skills in one statement")
+    void testGetAllSingleStatement() {
+        StatementCounter.reset();
+        List<Candidate> candidates = candidateDAO.getAll();
+
+        assertEquals(3, candidates.size());
+        assertEquals(1, StatementCounter.get());
+        // skills must be usable after the entity manager is closed
+        candidates.forEach(c -> assertFalse(c.getSkills().isEmpty()));
+    }
+
+    @Test
+    @DisplayName("Get by id loads skills in the same statement")
+    void testGetByIdSingleStatement() {
+        int id = candidateDAO.getAll().get(0).getId();
+
+        StatementCounter.reset();
+        Candidate candidate = candidateDAO.getById(id);
+
+        assertNotNull(candidate);
+        assertEquals(1, StatementCounter.get());
+        assertFalse(candidate.getSkills().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Dto projection groups skills per candidate in one statement")
+    void testGetByIdsAsDTOs() {
+        List<Integer> ids = candidateDAO.getAll().stream().map(Candidate::getId).sorted().toList();
+
+        StatementCounter.reset();
+        List<CandidateDTO> candidates = candidateDAO.getByIdsAsDTOs(List.of(ids.get(2), ids.get(0), -1));
+
+        assertEquals(1, StatementCounter.get());
+        assertEquals(2, candidates.size());
+        assertEquals("John Nielsen", candidates.get(0).getName());
+        assertEquals(2, candidates.get(0).getSkills().size());
+        assertEquals("Lars Andersen", candidates.get(1).getName());
+    }
+
+    @Test
+    @DisplayName("Dto pages use a constant number of statements and are streamed page by page")
+    void testDTOPageAndStream() {
+        StatementCounter.reset();
+        List<CandidateDTO> page = candidateDAO.getPageAsDTOs(0, 2);
+        assertEquals(2, StatementCounter.get());
+        assertEquals(2, page.size());
+        assertTrue(page.get(0).getId() < page.get(1).getId());
+
+        List<CandidateDTO> next = candidateDAO.getPageAsDTOs(page.get(1).getId(), 2);
+        assertEquals(1, next.size());
+
+        try (var stream = candidateDAO.streamAllAsDTOs(2)) {
+            assertEquals(List.of("John Nielsen", "Maria Hansen", "Lars Andersen"),
+                    stream.map(CandidateDTO::getName).toList());
+        }
+    }
+
+    @Test
+    @DisplayName("Skill slugs are grouped by candidate")
+    void testGetSkillSlugsByCandidate() {
+        Map<Integer, Set<String>> slugs = candidateDAO.getSkillSlugsByCandidate();
+
+        assertEquals(3, slugs.size());
+        assertTrue(slugs.values().stream().anyMatch(s -> s.equals(Set.of("java", "spring-boot"))));
+    }
+
+    @Test
+    @DisplayName("Repeated skill lookups are served from the cache")
+    void testSecondLevelCache() {
+        SkillDAO skillDAO = new SkillDAO(emf);
+        int skillId = skillDAO.getAll().get(0).getId();
+        skillDAO.getById(skillId);
+
+        StatementCounter.reset();
+        Skill skill = skillDAO.getById(skillId);
+        assertNotNull(skill);
+        assertEquals(0, StatementCounter.get());
+    }
+
+    @Test
+    @DisplayName("Create all persists every candidate with sequence ids")
+    void testCreateAll() {
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            candidates.add(new Candidate("Batch " + i, null, null));
+        }
+
+        List<Candidate> created = candidateDAO.createAll(candidates);
+
+        assertEquals(120, created.size());
+        assertEquals(120, created.stream().mapToInt(Candidate::getId).distinct().count());
+        assertTrue(created.stream().allMatch(c -> c.getId() > 0));
+        assertNotNull(candidateDAO.getById(created.get(119).getId()));
+
+        // the other tests expect the three candidates from the test data
+        created.forEach(c -> candidateDAO.delete(c.getId()));
+    }
+
+    @Test
+    @DisplayName("Adding several skills takes four statements and returns the updated candidate")
+    void testAddSkillsToCandidate() {
+        int id = candidateDAO.createAll(List.of(new Candidate("Skill Batch", null, null))).get(0).getId();
+
+        StatementCounter.reset();
+        Candidate updated = candidateDAO.addSkillsToCandidate(id, List.of(1, 2), List.of("postgresql"));
+
+        assertEquals(4, StatementCounter.get());
+        assertEquals(3, updated.getSkills().size());
+        assertEquals(1, updated.getVersion());
+        assertEquals(3, candidateDAO.getById(id).getSkills().size());
+
+        // skills the candidate already has are skipped
+        candidateDAO.addSkillsToCandidate(id, List.of(1), List.of("python"));
+        assertEquals(3, candidateDAO.getById(id).getSkills().size());
+
+        assertThrows(IllegalArgumentException.class, () -> candidateDAO.addSkillsToCandidate(id, List.of(), List.of("cobol")));
+        assertNull(candidateDAO.addSkillsToCandidate(-1, List.of(1), List.of()));
+
+        candidateDAO.delete(id);
+    }
+}
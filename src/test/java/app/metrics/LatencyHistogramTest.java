@@ -0,0 +1,64 @@
+package app.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("Values go in the smallest power of two bucket that holds them")
+    void testBucketOf() {
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        assertEquals(0, LatencyHistogram.bucketOf(1 << 14));
+        assertEquals(1, LatencyHistogram.bucketOf((1 << 14) + 1));
+        assertEquals(1, LatencyHistogram.bucketOf(1 << 15));
+        assertEquals(22, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    @DisplayName("Concurrent recording loses no values")
+    void testConcurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i * 1000L);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80_000, histogram.getCount());
+    }
+
+    @Test
+    @DisplayName("Histograms are written as cumulative prometheus buckets")
+    void testPrometheusOutput() {
+        MetricsRegistry registry = new MetricsRegistry();
+        LatencyHistogram histogram = registry.histogram("test_duration_seconds", "Test", MetricsRegistry.labels("route", "/a"));
+        histogram.record(10_000);        // first bucket
+        histogram.record(1_000_000);     // ~1ms
+        histogram.record(100_000_000_000L); // above the last bucket
+        registry.counter("test_total", "Test", "").add(3);
+
+        String output = registry.scrape();
+
+        assertTrue(output.contains("# TYPE test_duration_seconds histogram"));
+        assertTrue(output.contains("test_duration_seconds_bucket{route=\"/a\",le=\"0.000016384\"} 1\n"));
+        assertTrue(output.contains("test_duration_seconds_bucket{route=\"/a\",le=\"0.001048576\"} 2\n"));
+        assertTrue(output.contains("test_duration_seconds_bucket{route=\"/a\",le=\"34.359738368\"} 2\n"));
+        assertTrue(output.contains("test_duration_seconds_bucket{route=\"/a\",le=\"+Inf\"} 3\n"));
+        assertTrue(output.contains("test_duration_seconds_count{route=\"/a\"} 3\n"));
+        assertTrue(output.contains("# TYPE test_total counter\ntest_total 3\n"));
+    }
+}
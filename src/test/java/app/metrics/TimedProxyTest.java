@@ -0,0 +1,66 @@
+package app.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimedProxyTest {
+
+    interface Greeter {
+        String greet(String name);
+    }
+
+    interface Lister {
+        Stream<String> list(boolean failHalfway);
+    }
+
+    @Test
+    @DisplayName("Calls are timed per method and exceptions reach the caller unwrapped")
+    void testTimedCalls() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Greeter greeter = TimedProxy.wrap(Greeter.class, name -> {
+            if (name == null) {
+                throw new IllegalArgumentException("No name");
+            }
+            return "Hi " + name;
+        }, registry, "greeter");
+
+        assertEquals("Hi Ann", greeter.greet("Ann"));
+        assertThrows(IllegalArgumentException.class, () -> greeter.greet(null));
+
+        String output = registry.scrape();
+        assertTrue(output.contains("dao_call_duration_seconds_count{dao=\"greeter\",method=\"greet\"} 2\n"));
+        assertTrue(output.contains("dao_call_errors_total{dao=\"greeter\",method=\"greet\"} 1\n"));
+    }
+
+    @Test
+    @DisplayName("Streams are timed until they are read or closed and errors while reading are counted")
+    void testTimedStreams() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Lister lister = TimedProxy.wrap(Lister.class, failHalfway -> Stream.of("a", "b", "c").map(item -> {
+            if (failHalfway && item.equals("b")) {
+                throw new IllegalStateException("Connection lost");
+            }
+            return item;
+        }), registry, "lister");
+
+        Stream<String> unread = lister.list(false);
+        assertTrue(registry.scrape().contains("dao_call_duration_seconds_count{dao=\"lister\",method=\"list\"} 0\n"));
+
+        assertEquals(List.of("a", "b", "c"), lister.list(false).toList());
+        try (Stream<String> closed = unread) {
+            assertEquals("a", closed.findFirst().orElseThrow());
+        }
+        try (Stream<String> failing = lister.list(true)) {
+            assertThrows(IllegalStateException.class, failing::toList);
+        }
+
+        String output = registry.scrape();
+        assertTrue(output.contains("dao_call_duration_seconds_count{dao=\"lister\",method=\"list\"} 3\n"));
+        assertTrue(output.contains("dao_call_errors_total{dao=\"lister\",method=\"list\"} 1\n"));
+    }
+}
@@ -0,0 +1,65 @@
+package app.security;
+
+import app.entities.User;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtUtilTest {
+
+    private static final String SECRET = "randomkey123randomkey123randomkey123randomkey123";
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = new JwtUtil(SECRET);
+    }
+
+    @Test
+    @DisplayName("Roles and username are the same on first and cached lookups")
+    void testExtractRolesCached() {
+        User user = new User("admin", "admin123");
+        user.addRole(Roles.ADMIN);
+        user.addRole(Roles.USER);
+        String token = jwtUtil.createToken(user);
+
+        assertEquals(Set.of("ADMIN", "USER"), jwtUtil.extractRoles(token));
+        assertEquals(Set.of("ADMIN", "USER"), jwtUtil.extractRoles(token));
+        assertEquals("admin", jwtUtil.extractUsername(token));
+    }
+
+    @Test
+    @DisplayName("A tampered token is rejected even after the original was cached")
+    void testTamperedTokenRejected() {
+        User user = new User("user", "user123");
+        user.addRole(Roles.USER);
+        String token = jwtUtil.createToken(user);
+        jwtUtil.extractRoles(token);
+
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        assertThrows(JWTVerificationException.class, () -> jwtUtil.extractRoles(tampered));
+    }
+
+    @Test
+    @DisplayName("An expired token is rejected")
+    void testExpiredTokenRejected() {
+        String expired = JWT.create()
+                .withIssuer("candidate-matcher-api")
+                .withSubject("user")
+                .withClaim("roles", List.of("USER"))
+                .withExpiresAt(new Date(System.currentTimeMillis() - 1000))
+                .sign(Algorithm.HMAC256(SECRET));
+
+        assertThrows(JWTVerificationException.class, () -> jwtUtil.extractRoles(expired));
+    }
+}
@@ -0,0 +1,72 @@
+package app.security;
+
+import app.exceptions.ApiException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+    @Test
+    @DisplayName("Hashes with the configured cost and verifies the password")
+    void testHashAndVerify() {
+        PasswordHasher hasher = new PasswordHasher(5, 1, 10);
+
+        String hash = hasher.hashAsync("secret").join();
+
+        assertEquals(5, PasswordHasher.costOf(hash));
+        assertTrue(hasher.verifyAsync("secret", hash).join().matches());
+        assertFalse(hasher.verifyAsync("wrong", hash).join().matches());
+        assertNull(hasher.verifyAsync("secret", hash).join().getUpgradedHash());
+    }
+
+    @Test
+    @DisplayName("A matching password with a hash of another cost gets an upgraded hash")
+    void testRehashOnCostChange() {
+        PasswordHasher hasher = new PasswordHasher(5, 1, 10);
+        String oldHash = BCrypt.hashpw("secret", BCrypt.gensalt(4));
+
+        PasswordHasher.Verification verification = hasher.verifyAsync("secret", oldHash).join();
+
+        assertTrue(verification.matches());
+        assertNotNull(verification.getUpgradedHash());
+        assertEquals(5, PasswordHasher.costOf(verification.getUpgradedHash()));
+        assertTrue(BCrypt.checkpw("secret", verification.getUpgradedHash()));
+
+        // a wrong password never produces a new hash
+        assertNull(hasher.verifyAsync("wrong", oldHash).join().getUpgradedHash());
+    }
+
+    @Test
+    @DisplayName("Requests are rejected with 503 when the pool and its queue are full")
+    void testRejectsWhenSaturated() {
+        PasswordHasher hasher = new PasswordHasher(12, 1, 1);
+
+        // one running and one queued, the third has nowhere to go
+        CompletableFuture<String> running = hasher.hashAsync("a");
+        CompletableFuture<String> queued = hasher.hashAsync("b");
+        ApiException e = assertThrows(ApiException.class, () -> hasher.hashAsync("c"));
+
+        assertEquals(503, e.getCode());
+        running.join();
+        queued.join();
+    }
+
+    @Test
+    @DisplayName("Cost is read from the hash, malformed hashes give -1")
+    void testCostOf() {
+        assertEquals(10, PasswordHasher.costOf(BCrypt.hashpw("x", BCrypt.gensalt(10))));
+        assertEquals(-1, PasswordHasher.costOf("not-a-hash"));
+        assertEquals(-1, PasswordHasher.costOf(null));
+    }
+
+    @Test
+    @DisplayName("Cost outside what bcrypt supports is refused")
+    void testInvalidCost() {
+        assertThrows(IllegalArgumentException.class, () -> new PasswordHasher(3, 1, 1));
+    }
+}
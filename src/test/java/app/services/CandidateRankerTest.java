@@ -0,0 +1,90 @@
+package app.services;
+
+import app.dao.ISkillDao;
+import app.dto.RankedCandidateDTO;
+import app.entities.Skill;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CandidateRankerTest {
+
+    private SkillMatchIndex index;
+    private CandidateRanker ranker;
+
+    @BeforeEach
+    void setUp() {
+        // python has no stats yet, like a skill the refresher hasn't seen
+        ISkillDao skillDAO = mock(ISkillDao.class);
+        when(skillDAO.getBySlugs(any())).thenReturn(Map.of(
+                "java", skill("java", 90, 60_000),
+                "docker", skill("docker", 50, 50_000),
+                "react", skill("react", 80, 40_000),
+                "python", new Skill("Python", "python", null, null)));
+
+        index = new SkillMatchIndex();
+        index.rebuild(Map.of(
+                1, Set.of("java"),
+                2, Set.of("java", "docker"),
+                3, Set.of("java", "react"),
+                4, Set.of("python", "docker"),
+                5, Set.of("java", "docker", "react")));
+        ranker = new CandidateRanker(index, skillDAO);
+    }
+
+    @Test
+    @DisplayName("Candidates with more and better preferred skills rank higher")
+    void testRanking() {
+        List<RankedCandidateDTO> ranked = ranker.rank(Map.of("java", 1.0), Map.of("docker", 1.0, "react", 1.0), 10);
+
+        // 4 doesn't have java, so it is left out. react is more popular than docker, which outweighs its lower salary
+        assertEquals(List.of(5, 3, 2, 1), ranked.stream().map(RankedCandidateDTO::getCandidateId).toList());
+        assertTrue(ranked.get(0).getMatchedSkills().containsAll(List.of("java", "docker", "react")));
+    }
+
+    @Test
+    @DisplayName("Weights change the order and the limit is respected")
+    void testWeightsAndLimit() {
+        List<RankedCandidateDTO> ranked = ranker.rank(Map.of(), Map.of("docker", 1.0, "react", 5.0), 2);
+
+        assertEquals(List.of(5, 3), ranked.stream().map(RankedCandidateDTO::getCandidateId).toList());
+        assertTrue(ranked.get(0).getScore() > ranked.get(1).getScore());
+    }
+
+    @Test
+    @DisplayName("Large candidate sets are scored in parallel with the same result")
+    void testParallelRanking() {
+        Map<Integer, Set<String>> slugs = new HashMap<>();
+        for (int id = 1; id <= 120_000; id++) {
+            slugs.put(id, id % 1000 == 0 ? Set.of("java", "docker", "react") : id % 3 == 0 ? Set.of("java", "docker") : Set.of("java"));
+        }
+        index.rebuild(slugs);
+
+        List<RankedCandidateDTO> ranked = ranker.rank(Map.of("java", 1.0), Map.of("docker", 1.0, "react", 1.0), 5);
+
+        assertEquals(List.of(1000, 2000, 3000, 4000, 5000), ranked.stream().map(RankedCandidateDTO::getCandidateId).toList());
+    }
+
+    @Test
+    @DisplayName("At least one skill is needed")
+    void testNoSkills() {
+        assertThrows(IllegalArgumentException.class, () -> ranker.rank(Map.of(), Map.of(), 10));
+    }
+
+    private static Skill skill(String slug, int popularity, int salary) {
+        Skill skill = new Skill(slug, slug, null, null);
+        skill.setPopularityScore(popularity);
+        skill.setAverageSalary(salary);
+        return skill;
+    }
+}
@@ -0,0 +1,64 @@
+package app.services;
+
+import app.entities.Candidate;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandidateVersionTrackerTest {
+
+    private static Candidate candidate(int id, int version) {
+        Candidate candidate = new Candidate("Test", null, null);
+        candidate.setId(id);
+        candidate.setVersion(version);
+        return candidate;
+    }
+
+    @Test
+    @DisplayName("A reader that loaded an older version doesn't replace the newer etag")
+    void testOlderVersionDoesNotReplaceNewer() {
+        CandidateVersionTracker tracker = new CandidateVersionTracker();
+        long statsVersion = tracker.getStatsVersion();
+
+        // a put saves version 2 while a get that loaded version 1 is still on its way
+        tracker.candidateSaved(candidate(1, 2));
+        String newer = tracker.getETag(1);
+        String older = tracker.record(candidate(1, 1), statsVersion);
+
+        assertNotEquals(newer, older);
+        assertEquals(newer, tracker.getETag(1));
+    }
+
+    @Test
+    @DisplayName("A candidate loaded before the stats changed is not remembered")
+    void testLoadBeforeStatsChangeIsNotRecorded() {
+        CandidateVersionTracker tracker = new CandidateVersionTracker();
+        long statsVersion = tracker.getStatsVersion();
+
+        tracker.skillStatsChanged();
+        tracker.record(candidate(1, 1), statsVersion);
+
+        assertNull(tracker.getETag(1));
+
+        String etag = tracker.record(candidate(1, 1), tracker.getStatsVersion());
+        assertEquals(etag, tracker.getETag(1));
+    }
+
+    @Test
+    @DisplayName("No more than maxTracked candidates are remembered")
+    void testBounded() {
+        CandidateVersionTracker tracker = new CandidateVersionTracker(2);
+        long statsVersion = tracker.getStatsVersion();
+
+        tracker.record(candidate(1, 1), statsVersion);
+        tracker.record(candidate(2, 1), statsVersion);
+        String third = tracker.record(candidate(3, 1), statsVersion);
+
+        assertNotNull(third);
+        assertNull(tracker.getETag(3));
+        // the ones already tracked are still updated
+        tracker.record(candidate(1, 2), statsVersion);
+        assertTrue(tracker.getETag(1).contains("-1-2-"));
+    }
+}
@@ -0,0 +1,57 @@
+package app.services;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    @Test
+    @DisplayName("Breaker opens after consecutive failures and turns calls away")
+    void testOpensAfterFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 60_000);
+
+        breaker.recordFailure();
+        breaker.recordFailure();
+        // a success in between starts the count over
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertEquals(1, breaker.getTimesOpened());
+        assertEquals(1, breaker.getShortCircuited());
+    }
+
+    @Test
+    @DisplayName("After the open period one probe is let through and its result decides the state")
+    void testHalfOpenProbe() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 5);
+        breaker.recordFailure();
+        Thread.sleep(10);
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // only one probe at a time
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(10);
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(2, breaker.getTimesOpened());
+        assertEquals(2, breaker.getTimesHalfOpened());
+        assertEquals(1, breaker.getTimesClosed());
+        assertTrue(breaker.allowRequest());
+    }
+}
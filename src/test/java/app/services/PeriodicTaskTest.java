@@ -0,0 +1,33 @@
+package app.services;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeriodicTaskTest {
+
+    @Test
+    @DisplayName("A run that throws doesn't stop the later runs, and stop does")
+    void testKeepsRunningAfterFailure() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch ranAgain = new CountDownLatch(2);
+        PeriodicTask task = new PeriodicTask("test-task", () -> {
+            runs.incrementAndGet();
+            ranAgain.countDown();
+            throw new IllegalStateException("Upstream is down");
+        });
+
+        task.start(0, 10, TimeUnit.MILLISECONDS);
+        assertTrue(ranAgain.await(5, TimeUnit.SECONDS));
+        task.stop();
+
+        int runsAtStop = runs.get();
+        Thread.sleep(100);
+        assertTrue(runs.get() <= runsAtStop + 1);
+    }
+}
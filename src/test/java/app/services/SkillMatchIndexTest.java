@@ -0,0 +1,110 @@
+package app.services;
+
+import app.entities.Candidate;
+import app.entities.Skill;
+import app.entities.SkillCategory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SkillMatchIndexTest {
+
+    private SkillMatchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new SkillMatchIndex();
+        index.rebuild(Map.of(
+                1, Set.of("java", "spring-boot"),
+                2, Set.of("python"),
+                3, Set.of("java", "postgresql", "docker"),
+                4, Set.of("java", "docker", "react")), Map.of(
+                "java", SkillCategory.PROG_LANG,
+                "python", SkillCategory.PROG_LANG,
+                "spring-boot", SkillCategory.FRAMEWORK,
+                "postgresql", SkillCategory.DB,
+                "docker", SkillCategory.DEVOPS,
+                "react", SkillCategory.FRONTEND));
+    }
+
+    @Test
+    @DisplayName("All requires every skill")
+    void testMatchAll() {
+        assertArrayEquals(new int[]{3, 4}, index.match(List.of("java", "docker"), List.of()).toArray());
+        assertArrayEquals(new int[]{3}, index.match(List.of("JAVA", "postgresql", "docker"), List.of()).toArray());
+    }
+
+    @Test
+    @DisplayName("Any requires at least one skill, combined with all")
+    void testMatchAny() {
+        assertArrayEquals(new int[]{1, 2}, index.match(List.of(), List.of("python", "spring-boot")).toArray());
+        assertArrayEquals(new int[]{4}, index.match(List.of("java", "docker"), List.of("react", "cobol")).toArray());
+    }
+
+    @Test
+    @DisplayName("An unknown skill in all matches nobody")
+    void testUnknownSkill() {
+        assertTrue(index.match(List.of("java", "cobol"), List.of()).isEmpty());
+        assertTrue(index.match(List.of(), List.of("cobol")).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Saved and deleted candidates update the index")
+    void testListenerUpdates() {
+        Skill java = new Skill("Java", "java", SkillCategory.PROG_LANG, null);
+        Skill python = new Skill("Python", "python", SkillCategory.PROG_LANG, null);
+        Candidate candidate = new Candidate("New", null, null);
+        candidate.setId(2);
+        candidate.getSkills().add(java);
+        candidate.getSkills().add(python);
+
+        index.candidateSaved(candidate);
+        assertArrayEquals(new int[]{1, 2, 3, 4}, index.match(List.of("java"), List.of()).toArray());
+
+        index.candidateDeleted(3);
+        assertArrayEquals(new int[]{4}, index.match(List.of("docker"), List.of()).toArray());
+        assertTrue(index.match(List.of("postgresql"), List.of()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Categories are matched with all and any")
+    void testMatchCategories() {
+        assertArrayEquals(new int[]{1, 2, 3, 4}, index.matchCategories(List.of(SkillCategory.PROG_LANG), false).toArray());
+        assertArrayEquals(new int[]{3, 4}, index.matchCategories(List.of(SkillCategory.PROG_LANG, SkillCategory.DEVOPS), true).toArray());
+        assertArrayEquals(new int[]{1, 3}, index.matchCategories(List.of(SkillCategory.DB, SkillCategory.FRAMEWORK), false).toArray());
+        assertTrue(index.matchCategories(List.of(SkillCategory.DB, SkillCategory.TESTING), true).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Categories follow saved and deleted candidates")
+    void testCategoriesFollowWrites() {
+        Candidate candidate = new Candidate("New", null, null);
+        candidate.setId(5);
+        candidate.getSkills().add(new Skill("JUnit", "junit", SkillCategory.TESTING, null));
+        index.candidateSaved(candidate);
+
+        assertArrayEquals(new int[]{5}, index.matchCategories(List.of(SkillCategory.TESTING), false).toArray());
+
+        // candidate 3 loses docker, so it is no longer in devops
+        candidate = new Candidate("Changed", null, null);
+        candidate.setId(3);
+        candidate.getSkills().add(new Skill("Java", "java", SkillCategory.PROG_LANG, null));
+        index.candidateSaved(candidate);
+        assertArrayEquals(new int[]{4}, index.matchCategories(List.of(SkillCategory.DEVOPS), false).toArray());
+
+        index.candidateDeleted(5);
+        assertTrue(index.matchCategories(List.of(SkillCategory.TESTING), false).isEmpty());
+    }
+
+    @Test
+    @DisplayName("At least one skill has to be given")
+    void testNoSkills() {
+        assertThrows(IllegalArgumentException.class, () -> index.match(List.of(), List.of()));
+    }
+}
@@ -1,89 +1,219 @@
 package app.services;
 
-import app.dto.SkillDTO;
-import app.entities.SkillCategory;
-import org.junit.jupiter.api.BeforeEach;
+import app.dto.external.SkillStatsDTO;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class SkillStatsAPIClientTest {
 
-    private SkillStatsApiClient client;
-
-    @BeforeEach
-    void setUp() {
-        client = new SkillStatsApiClient();
+    @Test
+    @DisplayName("Batches should split many slugs into several short requests")
+    void testBuildBatchesSplitsSlugs() {
+        List<String> slugs = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            slugs.add("skill-number-" + i);
+        }
+
+        List<List<String>> batches = SkillStatsApiClient.buildBatches(SkillStatsApiClient.DEFAULT_BASE_URL, slugs);
+
+        assertTrue(batches.size() > 1);
+        int slugCount = 0;
+        for (List<String> batch : batches) {
+            assertTrue(SkillStatsApiClient.buildUrl(SkillStatsApiClient.DEFAULT_BASE_URL, batch).length() <= 1800);
+            slugCount += batch.size();
+        }
+        assertEquals(250, slugCount);
     }
 
     @Test
-    @DisplayName("Enrich skills with empty set should return empty set")
-    void testEnrichSkillsEmptySet() {
-        Set<SkillDTO> emptySet = new HashSet<>();
+    @DisplayName("Batches should skip duplicate slugs and be empty for no slugs")
+    void testBuildBatchesDistinct() {
+        assertTrue(SkillStatsApiClient.buildBatches(SkillStatsApiClient.DEFAULT_BASE_URL, List.of()).isEmpty());
 
-        Set<SkillDTO> result = client.enrichSkills(emptySet);
+        List<List<String>> batches = SkillStatsApiClient.buildBatches(SkillStatsApiClient.DEFAULT_BASE_URL, List.of("java", "java", "docker"));
 
-        assertNotNull(result);
-        assertTrue(result.isEmpty());
+        assertEquals(1, batches.size());
+        assertTrue(SkillStatsApiClient.buildUrl(SkillStatsApiClient.DEFAULT_BASE_URL, batches.get(0)).endsWith("?slugs=java,docker"));
     }
 
     @Test
-    @DisplayName("Enrich skills should call real API and add popularity and salary")
-    void testEnrichSkillsWithRealApi() {
-
-        Set<SkillDTO> skills = new HashSet<>();
-        SkillDTO javaSkill = new SkillDTO();
-        javaSkill.setName("Java");
-        javaSkill.setSlug("java");
-        javaSkill.setCategory(SkillCategory.PROG_LANG);
-        skills.add(javaSkill);
-
-        Set<SkillDTO> result = client.enrichSkills(skills);
-
-        assertNotNull(result);
-        assertEquals(1, result.size());
+    @DisplayName("Parsing keeps the used fields keyed by lower case slug and skips the rest")
+    void testParseStats() throws IOException {
+        String json = "{\"meta\":{\"count\":2,\"tags\":[1,2]},\"data\":["
+                + "{\"id\":\"1\",\"slug\":\"Java\",\"extra\":{\"nested\":[{}]},\"popularityScore\":90,"
+                + "\"averageSalary\":60000,\"updatedAt\":\"2025-01-01T10:00:00Z\"},"
+                + "{\"slug\":\"docker\",\"popularityScore\":null,\"averageSalary\":50000}]}";
+
+        Map<String, SkillStatsDTO> stats = SkillStatsApiClient.parseStats(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, stats.size());
+        assertEquals(90, stats.get("java").getPopularityScore());
+        assertEquals(60000, stats.get("java").getAverageSalary());
+        assertEquals(ZonedDateTime.parse("2025-01-01T10:00:00Z"), stats.get("java").getUpdatedAt());
+        assertNull(stats.get("docker").getPopularityScore());
+        assertEquals(50000, stats.get("docker").getAverageSalary());
+    }
 
-        SkillDTO enrichedSkill = result.iterator().next();
-        assertEquals("Java", enrichedSkill.getName());
-        assertEquals("java", enrichedSkill.getSlug());
+    @Test
+    @DisplayName("Parsing an empty data list gives no stats")
+    void testParseStatsEmpty() throws IOException {
+        assertTrue(SkillStatsApiClient.parseStats(
+                new ByteArrayInputStream("{\"data\":[]}".getBytes(StandardCharsets.UTF_8))).isEmpty());
+    }
 
-        // if api call succeeds these should be populated
-        // if api fails, fallback returns skills without enrichment
-        // so we just check the skill is returned
-        assertNotNull(enrichedSkill);
+    @Test
+    @DisplayName("Failing requests open the circuit breaker and turn later calls away")
+    void testBreakerOpens() {
+        // nothing listens on port 1, so every request fails right away
+        SkillStatsApiClient deadClient = new SkillStatsApiClient("http://localhost:1/stats",
+                Duration.ofMillis(500), Duration.ofMillis(500), new CircuitBreaker("test", 1, 60_000));
+
+        assertTrue(deadClient.fetchStats(List.of("java", "docker")).isEmpty());
+        assertEquals(CircuitBreaker.State.OPEN, deadClient.getCircuitBreaker().getState());
+
+        assertTrue(deadClient.fetchStats(List.of("docker")).isEmpty());
+        assertEquals(1, deadClient.getCircuitBreaker().getShortCircuited());
+        assertEquals(2, deadClient.getFailedRequests());
     }
 
     @Test
-    @DisplayName("Enrich skills with multiple skills should handle all")
-    void testEnrichSkillsMultiple() {
-        Set<SkillDTO> skills = new HashSet<>();
-
-        SkillDTO javaSkill = new SkillDTO();
-        javaSkill.setName("Java");
-        javaSkill.setSlug("java");
-        javaSkill.setCategory(SkillCategory.PROG_LANG);
-        skills.add(javaSkill);
-
-        SkillDTO pythonSkill = new SkillDTO();
-        pythonSkill.setName("Python");
-        pythonSkill.setSlug("python");
-        pythonSkill.setCategory(SkillCategory.PROG_LANG);
-        skills.add(pythonSkill);
-
-        Set<SkillDTO> result = client.enrichSkills(skills);
-
-        assertNotNull(result);
-        assertEquals(2, result.size());
-        // both skills should be returned regardless of API success
+    @DisplayName("A request that can't even be built fails its slugs without leaving them in flight")
+    void testBadBaseUrl() {
+        // the space makes URI.create throw before anything is sent
+        SkillStatsApiClient badClient = new SkillStatsApiClient("http://localhost:1/skill stats");
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            assertTrue(badClient.fetchStats(List.of("java")).isEmpty());
+            assertTrue(badClient.fetchStats(List.of("java")).isEmpty());
+        });
+        assertEquals(0, badClient.getCoalescedLookups());
+        assertEquals(2, badClient.getFailedRequests());
     }
 
     @Test
-    @DisplayName("Enrich skills with unknown slug should return skill without enrichment")
-    void testEnrichSkillsUnknownSlug() {
+    @DisplayName("A body that stalls halfway times out and the connection is dropped")
+    void testStalledBodyIsClosed() throws IOException, InterruptedException {
+        CountDownLatch clientClosed = new CountDownLatch(1);
+        HttpServer stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.createContext("/stats", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            try {
+                out.write("{\"data\":[{\"slug\":\"java\",".getBytes(StandardCharsets.UTF_8));
+                // keeps the body open with whitespace until the client hangs up
+                for (int i = 0; i < 500; i++) {
+                    out.flush();
+                    Thread.sleep(20);
+                    out.write(' ');
+                }
+            } catch (IOException e) {
+                clientClosed.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stub.start();
+
+        try {
+            SkillStatsApiClient stubClient = new SkillStatsApiClient(
+                    "http://localhost:" + stub.getAddress().getPort() + "/stats",
+                    Duration.ofMillis(500), Duration.ofMillis(300), new CircuitBreaker("test", 5, 60_000));
+
+            long start = System.nanoTime();
+            assertTrue(stubClient.fetchStats(List.of("java")).isEmpty());
+
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+            assertEquals(1, stubClient.getFailedRequests());
+            assertTrue(clientClosed.await(5, TimeUnit.SECONDS), "the client never closed the stalled body");
+        } finally {
+            stub.stop(0);
+        }
     }
 
+    @Test
+    @DisplayName("Concurrent fetches of the same slug share one request to the api")
+    void testConcurrentFetchesAreCoalesced() throws Exception {
+        Map<String, AtomicInteger> requestsPerSlug = new ConcurrentHashMap<>();
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.setExecutor(Executors.newCachedThreadPool());
+        stub.createContext("/stats", exchange -> {
+            String[] slugs = exchange.getRequestURI().getQuery().substring("slugs=".length()).split(",");
+            StringBuilder json = new StringBuilder("{\"data\":[");
+            for (int i = 0; i < slugs.length; i++) {
+                requestsPerSlug.computeIfAbsent(slugs[i], slug -> new AtomicInteger()).incrementAndGet();
+                json.append(i == 0 ? "" : ",").append("{\"slug\":\"").append(slugs[i]).append("\",\"popularityScore\":80}");
+            }
+            json.append("]}");
+            try {
+                // holds every answer back until all callers have asked
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        stub.start();
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            SkillStatsApiClient stubClient = new SkillStatsApiClient(
+                    "http://localhost:" + stub.getAddress().getPort() + "/stats");
+
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<CompletableFuture<Map<String, SkillStatsDTO>>>> calls = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                calls.add(callers.submit(() -> {
+                    start.await();
+                    return stubClient.fetchStatsAsync(List.of("java"));
+                }));
+            }
+            start.countDown();
+            List<CompletableFuture<Map<String, SkillStatsDTO>>> fetches = new ArrayList<>();
+            for (Future<CompletableFuture<Map<String, SkillStatsDTO>>> call : calls) {
+                fetches.add(call.get(5, TimeUnit.SECONDS));
+            }
+            // a later fetch that overlaps only asks for the slug nobody is fetching yet
+            fetches.add(stubClient.fetchStatsAsync(List.of("java", "docker")));
+            release.countDown();
+
+            for (CompletableFuture<Map<String, SkillStatsDTO>> fetch : fetches) {
+                assertEquals(80, fetch.get(5, TimeUnit.SECONDS).get("java").getPopularityScore());
+            }
+            assertEquals(80, fetches.get(8).join().get("docker").getPopularityScore());
+            assertEquals(1, requestsPerSlug.get("java").get());
+            assertEquals(1, requestsPerSlug.get("docker").get());
+            assertEquals(8, stubClient.getCoalescedLookups());
+        } finally {
+            callers.shutdownNow();
+            stub.stop(0);
+        }
+    }
 }
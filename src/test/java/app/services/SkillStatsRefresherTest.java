@@ -0,0 +1,160 @@
+package app.services;
+
+import app.IntegrationTestBase;
+import app.dao.SkillDAO;
+import app.dto.TopCandidateDTO;
+import app.entities.Skill;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class SkillStatsRefresherTest extends IntegrationTestBase {
+
+    // slug -> json object the stub api returns for it, postgresql is unknown to the api
+    private final Map<String, String> stubStats = new ConcurrentHashMap<>();
+    private volatile boolean stubFailing;
+    private HttpServer stubServer;
+    private SkillDAO skillDAO;
+    private PopularityLeaderboard leaderboard;
+    private SkillStatsRefresher refresher;
+
+    @BeforeAll
+    void setUp() throws IOException {
+        setupTest(7779);
+
+        stubStats.put("java", stats("java", 90, 60000, "2025-01-01T00:00:00Z"));
+        stubStats.put("python", stats("python", 70, 55000, "2025-01-01T00:00:00Z"));
+        stubStats.put("spring-boot", stats("spring-boot", 60, 58000, "2025-01-01T00:00:00Z"));
+
+        stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stubServer.createContext("/stats", exchange -> {
+            if (stubFailing) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            String query = exchange.getRequestURI().getQuery();
+            List<String> found = new ArrayList<>();
+            for (String slug : query.substring("slugs=".length()).split(",")) {
+                if (stubStats.containsKey(slug)) {
+                    found.add(stubStats.get(slug));
+                }
+            }
+            byte[] body = ("{\"data\":[" + String.join(",", found) + "]}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        stubServer.start();
+
+        skillDAO = new SkillDAO(emf);
+        SkillStatsApiClient client = new SkillStatsApiClient(
+                "http://localhost:" + stubServer.getAddress().getPort() + "/stats");
+        leaderboard = new PopularityLeaderboard();
+        refresher = new SkillStatsRefresher(skillDAO, client, leaderboard, new CandidateVersionTracker());
+    }
+
+    @AfterAll
+    void tearDown() {
+        stubServer.stop(0);
+        teardownTest();
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Refresh stores the stats on the skills")
+    void testRefreshStoresStats() {
+        assertEquals(3, refresher.refresh());
+
+        Map<String, Skill> skills = skillDAO.getBySlugs(List.of("java", "python", "postgresql"));
+        assertEquals(90, skills.get("java").getPopularityScore());
+        assertEquals(60000, skills.get("java").getAverageSalary());
+        assertNotNull(skills.get("java").getStatsUpdatedAt());
+        assertEquals(70, skills.get("python").getPopularityScore());
+        assertNull(skills.get("postgresql").getPopularityScore());
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Skills with the same updatedAt are not written again")
+    void testUnchangedStatsAreSkipped() {
+        assertEquals(0, refresher.refresh());
+
+        stubStats.put("python", stats("python", 75, 56000, "2025-02-01T00:00:00Z"));
+        assertEquals(1, refresher.refresh());
+        assertEquals(75, skillDAO.getBySlugs(List.of("python")).get("python").getPopularityScore());
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("The leaderboard gets the refreshed popularity")
+    void testLeaderboardUpdated() {
+        // the server's own leaderboard was built before any stats were stored, this one is rebuilt from the table
+        leaderboard.rebuild(Map.of(1, Set.of("java", "spring-boot"), 2, Set.of("python")),
+                skillDAO.getPopularityBySlug());
+        assertEquals(1, leaderboard.getTop().getCandidateId());
+
+        stubStats.put("python", stats("python", 95, 56000, "2025-03-01T00:00:00Z"));
+        refresher.refresh();
+
+        TopCandidateDTO top = leaderboard.getTop();
+        assertEquals(2, top.getCandidateId());
+        assertEquals(95.0, top.getAveragePopularityScore());
+    }
+
+    @Test
+    @Order(4)
+    @DisplayName("Candidates are returned with the stored stats")
+    void testCandidateHasStoredStats() {
+        given()
+                .header("Authorization", "Bearer " + userToken)
+                .when()
+                .get("/candidates/2")
+                .then()
+                .statusCode(200)
+                .body("skills[0].slug", equalTo("python"))
+                .body("skills[0].popularityScore", equalTo(95))
+                .body("skills[0].averageSalary", equalTo(56000));
+    }
+
+    @Test
+    @Order(5)
+    @DisplayName("A failing api leaves the stored stats in place and is counted as stale")
+    void testFailingApiKeepsStoredStats() {
+        Instant lastFullRefresh = refresher.getLastFullRefresh();
+        assertNotNull(lastFullRefresh);
+
+        stubFailing = true;
+        try {
+            assertEquals(0, refresher.refresh());
+        } finally {
+            stubFailing = false;
+        }
+
+        assertEquals(95, skillDAO.getBySlugs(List.of("python")).get("python").getPopularityScore());
+        assertEquals(1, refresher.getStaleRefreshes());
+        assertEquals(lastFullRefresh, refresher.getLastFullRefresh());
+    }
+
+    private static String stats(String slug, int popularity, int salary, String updatedAt) {
+        return "{\"slug\":\"" + slug + "\",\"popularityScore\":" + popularity + ",\"averageSalary\":" + salary
+                + ",\"updatedAt\":\"" + updatedAt + "\"}";
+    }
+}
@@ -0,0 +1,80 @@
+package app.services;
+
+import app.dao.ISkillDao;
+import app.dto.external.SkillStatsDTO;
+import app.entities.Skill;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SkillStatsSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private static Skill skill(String slug, Integer popularity, Integer salary, Instant updatedAt) {
+        Skill skill = new Skill(slug, slug, null, null);
+        skill.setPopularityScore(popularity);
+        skill.setAverageSalary(salary);
+        skill.setStatsUpdatedAt(updatedAt);
+        return skill;
+    }
+
+    @Test
+    @DisplayName("A snapshot saved from the skill table puts the same stats back on the skills")
+    void testSaveAndLoad() throws IOException {
+        Instant updatedAt = Instant.parse("2025-01-01T10:00:00Z");
+        ISkillDao skillDAO = mock(ISkillDao.class);
+        // cobol has never had stats, so it isn't saved
+        when(skillDAO.getAll()).thenReturn(List.of(
+                skill("Java", 90, 60000, updatedAt),
+                skill("docker", null, 50000, null),
+                skill("cobol", null, null, null)));
+        when(skillDAO.updateStats(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        SkillStatsSnapshot snapshot = new SkillStatsSnapshot(dir.resolve("stats.snapshot"), skillDAO);
+        assertEquals(2, snapshot.save());
+        assertEquals(2, snapshot.load());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, SkillStatsDTO>> loaded = ArgumentCaptor.forClass(Map.class);
+        verify(skillDAO).updateStats(loaded.capture());
+        Map<String, SkillStatsDTO> stats = loaded.getValue();
+
+        assertEquals(2, stats.size());
+        assertEquals(90, stats.get("java").getPopularityScore());
+        assertEquals(60000, stats.get("java").getAverageSalary());
+        assertEquals(updatedAt, stats.get("java").getUpdatedAt().toInstant());
+        assertNull(stats.get("docker").getPopularityScore());
+        assertEquals(50000, stats.get("docker").getAverageSalary());
+        assertNull(stats.get("docker").getUpdatedAt());
+    }
+
+    @Test
+    @DisplayName("A missing or broken snapshot loads nothing")
+    void testMissingOrBrokenFile() throws IOException {
+        ISkillDao skillDAO = mock(ISkillDao.class);
+        Path file = dir.resolve("stats.snapshot");
+
+        assertEquals(0, new SkillStatsSnapshot(file, skillDAO).load());
+
+        Files.writeString(file, "not a snapshot");
+        assertEquals(0, new SkillStatsSnapshot(file, skillDAO).load());
+        verify(skillDAO, never()).updateStats(any());
+    }
+}